@@ -2,8 +2,10 @@ package com.bytezone.filesystem;
 
 import static com.bytezone.utility.Utility.formatText;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 import com.bytezone.filesystem.AppleFileSystem.FileSystemType;
 
@@ -13,6 +15,7 @@ public abstract class AbstractAppleFile implements AppleFile
 {
   protected AppleFileSystem parentFileSystem;
   protected List<AppleFileSystem> embeddedFileSystems = new ArrayList<> (1);
+  private List<Supplier<AppleFileSystem>> pendingFileSystems = new ArrayList<> (1);
 
   protected boolean isFile = true;
   protected boolean isFolder;
@@ -36,10 +39,10 @@ public abstract class AbstractAppleFile implements AppleFile
 
   // ---------------------------------------------------------------------------------//
   @Override
-  public boolean hasEmbeddedFileSystem ()
+  public synchronized boolean hasEmbeddedFileSystem ()
   // ---------------------------------------------------------------------------------//
   {
-    return embeddedFileSystems.size () > 0;
+    return embeddedFileSystems.size () > 0 || pendingFileSystems.size () > 0;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -100,27 +103,38 @@ public abstract class AbstractAppleFile implements AppleFile
     return parentFileSystem.getFileSystemType ();
   }
 
+  // ---------------------------------------------------------------------------------//
+  // The embedded file systems are only decompressed and read the first time they are
+  // asked for. A file system that fails to be created is not tried again.
   // ---------------------------------------------------------------------------------//
   @Override
-  public List<AppleFileSystem> getEmbeddedFileSystems ()
+  public synchronized List<AppleFileSystem> getEmbeddedFileSystems ()
   // ---------------------------------------------------------------------------------//
   {
+    while (pendingFileSystems.size () > 0)
+    {
+      AppleFileSystem fileSystem = pendingFileSystems.remove (0).get ();
+      if (fileSystem != null)
+        embeddedFileSystems.add (fileSystem);
+    }
+
     return embeddedFileSystems;
   }
 
   // ---------------------------------------------------------------------------------//
   @Override
-  public int getTotalEmbeddedFileSystems ()
+  public synchronized int getTotalEmbeddedFileSystems ()
   // ---------------------------------------------------------------------------------//
   {
-    return embeddedFileSystems.size ();
+    return embeddedFileSystems.size () + pendingFileSystems.size ();
   }
 
+  // see AbstractFileSystem.addEmbeddedFileSystem()
   // ---------------------------------------------------------------------------------//
-  void embedFileSystem (AppleFileSystem fileSystem)
+  synchronized void embedFileSystem (Supplier<AppleFileSystem> fileSystem)
   // ---------------------------------------------------------------------------------//
   {
-    embeddedFileSystems.add (fileSystem);
+    pendingFileSystems.add (fileSystem);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -156,6 +170,35 @@ public abstract class AbstractAppleFile implements AppleFile
     return rawFileBuffer;
   }
 
+  // The same bytes as getRawFileBuffer(), but if the data blocks are stored one after
+  // the other on a non-interleaved disk this is just a slice of the disk buffer.
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public ByteBuffer getRawFileView ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (rawFileBuffer == null && dataBlocks.size () > 0)
+    {
+      ByteBuffer view = parentFileSystem.getBlockReader ().view (dataBlocks);
+      if (view != null)
+        return view;
+    }
+
+    Buffer buffer = getRawFileBuffer ();
+    return ByteBuffer.wrap (buffer.data (), buffer.offset (), buffer.length ()).slice ()
+        .asReadOnlyBuffer ();
+  }
+
+  // The raw buffer, or null if it is bigger than maxBytes. Files that decompress their
+  // contents should check before they do it.
+  // ---------------------------------------------------------------------------------//
+  Buffer getRawFileBuffer (long maxBytes)
+  // ---------------------------------------------------------------------------------//
+  {
+    Buffer buffer = getRawFileBuffer ();
+    return buffer.length () > maxBytes ? null : buffer;
+  }
+
   // same data as rawFileBuffer, but with any offset or eof applied
   // ---------------------------------------------------------------------------------//
   @Override
@@ -169,6 +212,20 @@ public abstract class AbstractAppleFile implements AppleFile
     return exactFileBuffer;
   }
 
+  // Forget the buffers so that they can be garbage collected, they will be read (or
+  // decompressed) again if needed. Files whose buffers were not read from the data
+  // blocks must override this if they can get them back.
+  // ---------------------------------------------------------------------------------//
+  void releaseFileBuffers ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (dataBlocks.size () > 0)
+    {
+      rawFileBuffer = null;
+      exactFileBuffer = null;
+    }
+  }
+
   // Override this if the file has a known offset or eof
   // ---------------------------------------------------------------------------------//
   @Override
@@ -277,7 +334,7 @@ public abstract class AbstractAppleFile implements AppleFile
     formatText (text, "File name", getFileName ());
     formatText (text, "File system type", getFileSystemType ().toString ());
 
-    for (AppleFileSystem embeddedFs : embeddedFileSystems)
+    for (AppleFileSystem embeddedFs : getEmbeddedFileSystems ())
     {
       int totalFiles = embeddedFs.getFiles ().size ();
       formatText (text, "Embedded FS type",
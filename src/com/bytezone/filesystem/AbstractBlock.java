@@ -2,29 +2,21 @@ package com.bytezone.filesystem;
 
 import static com.bytezone.utility.Utility.formatText;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import com.bytezone.utility.Utility;
 
+// -----------------------------------------------------------------------------------//
+// A flyweight - everything except the block number is kept in the BlockReader, so two
+// AppleBlocks with the same block number are the same block.
 // -----------------------------------------------------------------------------------//
 abstract class AbstractBlock implements AppleBlock
 // -----------------------------------------------------------------------------------//
 {
   protected final AppleFileSystem fileSystem;
   protected final BlockReader blockReader;
-
-  protected AppleFile fileOwner;
-  protected BlockType blockType;
-  protected String blockSubType = "";
-
   protected final int blockNo;
-  protected final int trackNo;
-  protected final int sectorNo;
-
-  protected byte[] buffer;
-  protected boolean dirty;
-
-  protected Object userData;
 
   // ---------------------------------------------------------------------------------//
   AbstractBlock (AppleFileSystem fileSystem, int blockNo)
@@ -33,32 +25,13 @@ abstract class AbstractBlock implements AppleBlock
     this.fileSystem = Objects.requireNonNull (fileSystem, "File System is null");
     this.blockReader = fileSystem.getBlockReader ();
     this.blockNo = blockNo;
-
-    int blocksPerTrack = fileSystem.getBlocksPerTrack ();
-    if (blocksPerTrack > 0)
-    {
-      trackNo = blockNo / blocksPerTrack;
-      sectorNo = blockNo % blocksPerTrack;
-    }
-    else
-    {
-      trackNo = -1;
-      sectorNo = -1;
-    }
   }
 
   // ---------------------------------------------------------------------------------//
   AbstractBlock (AppleFileSystem fileSystem, int trackNo, int sectorNo)
   // ---------------------------------------------------------------------------------//
   {
-    this.fileSystem = Objects.requireNonNull (fileSystem, "File System is null");
-    this.blockReader = fileSystem.getBlockReader ();
-    this.blockNo = fileSystem.getBlocksPerTrack () * trackNo + sectorNo;
-
-    this.trackNo = trackNo;
-    this.sectorNo = sectorNo;
-
-    //    assert fileSystem.getAddressType () == AddressType.SECTOR;
+    this (fileSystem, fileSystem.getBlocksPerTrack () * trackNo + sectorNo);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -74,7 +47,7 @@ abstract class AbstractBlock implements AppleBlock
   public void setBlockType (BlockType blockType)
   // ---------------------------------------------------------------------------------//
   {
-    this.blockType = blockType;
+    blockReader.setBlockType (blockNo, blockType);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -82,7 +55,7 @@ abstract class AbstractBlock implements AppleBlock
   public BlockType getBlockType ()
   // ---------------------------------------------------------------------------------//
   {
-    return blockType;
+    return blockReader.getBlockType (blockNo);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -90,7 +63,7 @@ abstract class AbstractBlock implements AppleBlock
   public void setBlockSubType (String blockSubType)
   // ---------------------------------------------------------------------------------//
   {
-    this.blockSubType = blockSubType;
+    blockReader.setBlockSubType (blockNo, blockSubType);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -98,7 +71,7 @@ abstract class AbstractBlock implements AppleBlock
   public String getBlockSubType ()
   // ---------------------------------------------------------------------------------//
   {
-    return blockSubType;
+    return blockReader.getBlockSubType (blockNo);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -106,7 +79,7 @@ abstract class AbstractBlock implements AppleBlock
   public void setFileOwner (AppleFile appleFile)
   // ---------------------------------------------------------------------------------//
   {
-    this.fileOwner = appleFile;
+    blockReader.setFileOwner (blockNo, appleFile);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -114,7 +87,7 @@ abstract class AbstractBlock implements AppleBlock
   public AppleFile getFileOwner ()
   // ---------------------------------------------------------------------------------//
   {
-    return this.fileOwner;
+    return blockReader.getFileOwner (blockNo);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -130,7 +103,8 @@ abstract class AbstractBlock implements AppleBlock
   public int getTrackNo ()
   // ---------------------------------------------------------------------------------//
   {
-    return trackNo;
+    int blocksPerTrack = blockReader.getBlocksPerTrack ();
+    return blocksPerTrack > 0 ? blockNo / blocksPerTrack : -1;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -138,7 +112,8 @@ abstract class AbstractBlock implements AppleBlock
   public int getSectorNo ()
   // ---------------------------------------------------------------------------------//
   {
-    return sectorNo;
+    int blocksPerTrack = blockReader.getBlocksPerTrack ();
+    return blocksPerTrack > 0 ? blockNo % blocksPerTrack : -1;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -154,7 +129,7 @@ abstract class AbstractBlock implements AppleBlock
   public boolean isDirty ()
   // ---------------------------------------------------------------------------------//
   {
-    return dirty;
+    return blockReader.isDirty (blockNo);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -162,7 +137,6 @@ abstract class AbstractBlock implements AppleBlock
   public void markDirty ()
   // ---------------------------------------------------------------------------------//
   {
-    dirty = true;
     fileSystem.markDirty (this);        // add to the laundry basket
   }
 
@@ -171,7 +145,7 @@ abstract class AbstractBlock implements AppleBlock
   public void markClean ()
   // ---------------------------------------------------------------------------------//
   {
-    dirty = false;
+    blockReader.markClean (this);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -179,10 +153,26 @@ abstract class AbstractBlock implements AppleBlock
   public byte[] getBuffer ()
   // ---------------------------------------------------------------------------------//
   {
-    if (buffer == null)
-      buffer = blockReader.read (this);
+    return blockReader.getBuffer (this);
+  }
+
+  // Use the local buffer if it has already been read (it may have changes that are
+  // not on the disk yet), otherwise look at the disk directly if the layout allows it.
+  // If it doesn't the block is copied, but not kept in the block's local buffer.
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public ByteBuffer getByteBuffer ()
+  // ---------------------------------------------------------------------------------//
+  {
+    byte[] localBuffer = blockReader.getLocalBuffer (blockNo);
+    if (localBuffer != null)
+      return ByteBuffer.wrap (localBuffer).asReadOnlyBuffer ();
+
+    ByteBuffer view = blockReader.view (this);
+    if (view != null)
+      return view;
 
-    return buffer;
+    return ByteBuffer.wrap (blockReader.read (this)).asReadOnlyBuffer ();
   }
 
   // ---------------------------------------------------------------------------------//
@@ -190,8 +180,7 @@ abstract class AbstractBlock implements AppleBlock
   public void setBuffer (byte[] buffer)
   // ---------------------------------------------------------------------------------//
   {
-    this.buffer = buffer;         // still needs to be copied back to the disk buffer
-    dirty = true;
+    blockReader.setBuffer (this, buffer);   // still needs to be copied back to the disk
   }
 
   // ---------------------------------------------------------------------------------//
@@ -199,7 +188,7 @@ abstract class AbstractBlock implements AppleBlock
   public void setUserData (Object userData)
   // ---------------------------------------------------------------------------------//
   {
-    this.userData = userData;
+    blockReader.setUserData (blockNo, userData);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -207,7 +196,7 @@ abstract class AbstractBlock implements AppleBlock
   public Object getUserData ()
   // ---------------------------------------------------------------------------------//
   {
-    return userData;
+    return blockReader.getUserData (blockNo);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -218,6 +207,23 @@ abstract class AbstractBlock implements AppleBlock
     System.out.println (Utility.format (getBuffer ()));
   }
 
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public boolean equals (Object other)
+  // ---------------------------------------------------------------------------------//
+  {
+    return other instanceof AbstractBlock block && block.blockReader == blockReader
+        && block.blockNo == blockNo;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public int hashCode ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return System.identityHashCode (blockReader) * 31 + blockNo;
+  }
+
   // ---------------------------------------------------------------------------------//
   @Override
   public String toString ()
@@ -225,13 +231,17 @@ abstract class AbstractBlock implements AppleBlock
   {
     StringBuilder text = new StringBuilder ();
 
-    String dos = trackNo >= 0 ? String.format ("(%02X/%02X)", trackNo, sectorNo) : "";
+    int trackNo = getTrackNo ();
+    String dos =
+        trackNo >= 0 ? String.format ("(%02X/%02X)", trackNo, getSectorNo ()) : "";
 
     formatText (text, "Block type", (this instanceof BlockDos) ? "DOS" : "PRD");
     //    formatText (text, "Address type", fileSystem.getAddressType ().toString ());
     formatText (text, "Block no", 4, blockNo, dos);
-    formatText (text, "Block Type", blockType.toString ());
-    formatText (text, "Block subtype", blockSubType);
+    AppleFile fileOwner = getFileOwner ();
+
+    formatText (text, "Block Type", getBlockType ().toString ());
+    formatText (text, "Block subtype", getBlockSubType ());
     formatText (text, "File name", fileOwner == null ? "" : fileOwner.getFileName ());
 
     return Utility.rtrim (text);
@@ -11,6 +11,7 @@ import java.util.BitSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.LongFunction;
 
 import com.bytezone.filesystem.AppleBlock.BlockType;
 
@@ -219,21 +220,9 @@ abstract class AbstractFileSystem implements AppleFileSystem
   public byte[] readBlocks (List<AppleBlock> blocks)
   // ---------------------------------------------------------------------------------//
   {
-    int blockSize = blockReader.getBlockSize ();
-    byte[] buffer = new byte[blocks.size () * blockSize];
-
     // what about trailing (suppressed) empty blocks?
 
-    int ptr = 0;
-    for (AppleBlock block : blocks)
-    {
-      if (block != null)
-        System.arraycopy (blockReader.read (block), 0, buffer, ptr, blockSize);
-
-      ptr += blockSize;
-    }
-
-    return buffer;
+    return blockReader.read (blocks);         // copies contiguous runs in one go
   }
 
   // ---------------------------------------------------------------------------------//
@@ -351,44 +340,116 @@ abstract class AbstractFileSystem implements AppleFileSystem
     return freeBlocks;
   }
 
+  // Embedded images are probed with the same ProbeRegistry (and so the same statistics
+  // and adaptive order) as the image that holds them
   // ---------------------------------------------------------------------------------//
   protected FileSystemFactory getFactory ()
   // ---------------------------------------------------------------------------------//
   {
     if (factory == null)
+    {
       factory = new FileSystemFactory ();
 
+      ProbeRegistry probeRegistry = blockReader.getProbeRegistry ();
+      if (probeRegistry != null)
+        factory.setProbeRegistry (probeRegistry);
+    }
+
     return factory;
   }
 
-  // Called when an AppleFile contains a FileSystem (LIB, BIN2, FileZip etc)
+  // Called when an AppleFile contains a FileSystem (LIB, BIN2, FileZip etc). The file
+  // system is not created until the file's getEmbeddedFileSystems() is called. Files
+  // that decompress their contents (FileNuFX, FileZip) do that at the same time.
   // ---------------------------------------------------------------------------------//
-  protected AppleFileSystem addEmbeddedFileSystem (AppleFile file)
+  protected void addEmbeddedFileSystem (AppleFile file)
   // ---------------------------------------------------------------------------------//
   {
-    return addEmbeddedFileSystem (file, file.getFileName (), file.getRawFileBuffer ());
+    AbstractAppleFile appleFile = (AbstractAppleFile) file;
+
+    appleFile.embedFileSystem (                                  // embedded FS
+        () -> createFileSystem (file.getFileName (), maxBytes ->
+        {
+          Buffer buffer = appleFile.getRawFileBuffer (maxBytes);
+          return buffer == null ? null : new BlockReader (file.getFileName (), buffer);
+        }));
   }
 
   // Called directly when Prodos file is type PAS
   // ---------------------------------------------------------------------------------//
-  protected AppleFileSystem addEmbeddedFileSystem (AppleFile file, String name,
-      Buffer buffer)
+  protected void addEmbeddedFileSystem (AppleFile file, String name, Buffer buffer)
   // ---------------------------------------------------------------------------------//
   {
-    BlockReader blockReader = new BlockReader (name, buffer);
+    ((AbstractAppleFile) file).embedFileSystem (
+        () -> createFileSystem (name, maxBytes -> new BlockReader (name, buffer)));
+  }
 
-    AppleFileSystem fs = getFactory ().getFileSystem (blockReader);
-    if (fs != null)
-      ((AbstractAppleFile) file).embedFileSystem (fs);            // embedded FS
+  // ---------------------------------------------------------------------------------//
+  protected AppleFileSystem addFileSystem (String name, byte[] buffer)
+  // ---------------------------------------------------------------------------------//
+  {
+    return addFileSystem (name, maxBytes -> buffer);
+  }
+
+  // The contents are only decompressed if the expansion budget allows it. The function
+  // is given the most bytes they can be, and returns null if they would be more.
+  // ---------------------------------------------------------------------------------//
+  protected AppleFileSystem addFileSystem (String name, LongFunction<byte[]> contents)
+  // ---------------------------------------------------------------------------------//
+  {
+    AppleFileSystem fs = createFileSystem (name, maxBytes ->
+    {
+      byte[] buffer = contents.apply (maxBytes);
+      return buffer == null ? null : new BlockReader (name, buffer, 0, buffer.length);
+    });
+    addFileSystem (fs);
 
     return fs;
   }
 
+  // Read an image held inside this one, unless the expansion budget says no, in which
+  // case an empty FsData says why. The image is given the bytes left in the budget,
+  // and returns null if it would be bigger. The factory is not thread safe, and
+  // embedded file systems can be created from any thread that asks for them.
   // ---------------------------------------------------------------------------------//
-  protected AppleFileSystem addFileSystem (String name, byte[] buffer)
+  private synchronized AppleFileSystem createFileSystem (String name,
+      LongFunction<BlockReader> image)
+  // ---------------------------------------------------------------------------------//
+  {
+    ExpansionBudget budget = blockReader.getExpansionBudget ();
+    int depth = blockReader.getExpansionDepth () + 1;
+
+    String reason = budget == null ? null : budget.check (depth);
+    if (reason != null)
+      return notExpanded (name, reason);
+
+    long maxBytes = budget == null ? Long.MAX_VALUE : budget.getRemainingBytes ();
+    BlockReader blockReader = image.apply (maxBytes);     // may decompress the image
+
+    if (blockReader == null)                  // stopped before it broke the budget
+      return notExpanded (name, budget == null ? "too big" : budget.overrun ());
+
+    reason = budget == null ? null : budget.charge (blockReader.getDiskLength ());
+    if (reason != null)
+      return notExpanded (name, reason);
+
+    blockReader.setBlockCacheSize (this.blockReader.getBlockCacheSize ());
+    blockReader.setExpansionBudget (budget, depth);
+
+    return getFactory ().getFileSystem (blockReader);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private AppleFileSystem notExpanded (String name, String reason)
   // ---------------------------------------------------------------------------------//
   {
-    return addFileSystem (new BlockReader (name, buffer, 0, buffer.length));
+    BlockReader blockReader = new BlockReader (name, new byte[0]);
+    blockReader.setParameters (FileSystemFactory.dos1);
+
+    AppleFileSystem fs = new FsData (blockReader);
+    fs.setErrorMessage ("Not expanded: " + reason);
+
+    return fs;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -471,14 +532,14 @@ abstract class AbstractFileSystem implements AppleFileSystem
     else
     {
       blockReader.clean ();         // move dirty blocks back to disk buffer 
-      byte[] diskBuffer = blockReader.getDiskBuffer ().data ();
+      Buffer diskBuffer = blockReader.getDiskBuffer ();    // may be a slice
 
       try
       {
         if (file.createNewFile ())
         {
           OutputStream Stream = new FileOutputStream (fileName);
-          Stream.write (diskBuffer);
+          Stream.write (diskBuffer.data (), diskBuffer.offset (), diskBuffer.length ());
           Stream.close ();
         }
       }
@@ -489,6 +550,23 @@ abstract class AbstractFileSystem implements AppleFileSystem
     }
   }
 
+  // Only the changed blocks are written, force also waits until they reach the device.
+  // A DiskCopy header's data checksum covers the whole disk, so it is written again.
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public void save (boolean force) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    if (blockReader.getTotalUnsavedBlocks () == 0)
+      return;
+
+    blockReader.save (force);
+
+    for (DiskHeader diskHeader : diskHeaders)
+      if (diskHeader instanceof DiskHeaderDiskCopy diskCopy)
+        diskCopy.saveChecksum (blockReader, force);
+  }
+
   // debugging
   // ---------------------------------------------------------------------------------//
   private void showUsed (BitSet bitMap, int size)
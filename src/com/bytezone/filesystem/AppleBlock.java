@@ -1,5 +1,7 @@
 package com.bytezone.filesystem;
 
+import java.nio.ByteBuffer;
+
 // -----------------------------------------------------------------------------------//
 public interface AppleBlock         // this could be renamed to Address
 // -----------------------------------------------------------------------------------//
@@ -16,6 +18,8 @@ public interface AppleBlock         // this could be renamed to Address
 
   void setBuffer (byte[] buffer);
 
+  ByteBuffer getByteBuffer ();              // read-only, not copied when possible
+
   void setBlockType (BlockType blockType);
 
   BlockType getBlockType ();
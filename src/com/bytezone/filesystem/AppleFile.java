@@ -1,5 +1,6 @@
 package com.bytezone.filesystem;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import com.bytezone.filesystem.AppleFileSystem.FileSystemType;
@@ -60,6 +61,8 @@ public interface AppleFile
 
   public Buffer getFileBuffer ();                   // override if eof known
 
+  public ByteBuffer getRawFileView ();              // read-only, not copied if possible
+
   public void write (byte[] buffer);
 
   public void delete (boolean force);
@@ -1,5 +1,6 @@
 package com.bytezone.filesystem;
 
+import java.io.IOException;
 import java.util.List;
 
 import com.bytezone.filesystem.AppleBlock.BlockType;
@@ -22,6 +23,8 @@ public interface AppleFileSystem extends AppleContainer
 
   void create (String fileName);
 
+  void save (boolean force) throws IOException;    // write the changed blocks back
+
   public void putFile (AppleFile file);
 
   // passed through to BlockReader
@@ -0,0 +1,161 @@
+package com.bytezone.filesystem;
+
+import static com.bytezone.utility.Utility.formatText;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// Keeps the local buffers of a BlockReader's blocks within a byte budget by releasing
+// the least recently used ones. A released buffer is simply read again the next time
+// the block's getBuffer() is called. Dirty blocks are pinned until BlockReader.clean(),
+// and FS_DATA blocks are never released because catalog entries keep references to
+// their buffers (see BlockReader.isPinned()). A budget of zero means the buffers are
+// kept forever.
+// -----------------------------------------------------------------------------------//
+public class BlockCache
+// -----------------------------------------------------------------------------------//
+{
+  private final LinkedHashMap<Integer, Integer> blocks =
+      new LinkedHashMap<> (64, 0.75f, true);        // access order, eldest first
+
+  private final BlockReader blockReader;
+  private final int blockSize;
+  private int maxBytes;
+  private int cachedBytes;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  // ---------------------------------------------------------------------------------//
+  BlockCache (BlockReader blockReader, int blockSize, int maxBytes)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.blockReader = blockReader;
+    this.blockSize = blockSize;
+    this.maxBytes = Math.max (0, maxBytes);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  void setMaxBytes (int maxBytes)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.maxBytes = Math.max (0, maxBytes);
+
+    if (this.maxBytes == 0)
+    {
+      blocks.clear ();
+      cachedBytes = 0;
+    }
+    else
+      evict ();
+  }
+
+  // the block already had its buffer
+  // ---------------------------------------------------------------------------------//
+  void hit (int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    ++hits;
+    track (blockNo);
+  }
+
+  // the block has just read its buffer from the disk
+  // ---------------------------------------------------------------------------------//
+  void miss (int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    ++misses;
+    track (blockNo);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  void track (int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (maxBytes == 0)
+      return;
+
+    if (blocks.put (blockNo, blockNo) == null)      // moves it to the end if present
+    {
+      cachedBytes += blockSize;
+      evict ();
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void evict ()
+  // ---------------------------------------------------------------------------------//
+  {
+    Iterator<Integer> iterator = blocks.keySet ().iterator ();
+
+    // never release the most recent block, it is about to be returned
+    while (cachedBytes > maxBytes && blocks.size () > 1)
+    {
+      int blockNo = iterator.next ();
+      iterator.remove ();
+      cachedBytes -= blockSize;
+
+      // pinned blocks are no longer tracked, the next hit will add them again
+      if (blockReader.isPinned (blockNo))
+        continue;
+
+      blockReader.releaseBuffer (blockNo);
+      ++evictions;
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public int getMaxBytes ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return maxBytes;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public int getCachedBytes ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return cachedBytes;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public long getHits ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return hits;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public long getMisses ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return misses;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public long getEvictions ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return evictions;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public String toString ()
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+
+    formatText (text, "Cache budget", 8, maxBytes);
+    formatText (text, "Cached bytes", 8, cachedBytes);
+    formatText (text, "Cache hits", 8, (int) hits);
+    formatText (text, "Cache misses", 8, (int) misses);
+    formatText (text, "Cache evictions", 8, (int) evictions);
+
+    return Utility.rtrim (text);
+  }
+}
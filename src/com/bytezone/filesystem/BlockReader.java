@@ -3,10 +3,21 @@ package com.bytezone.filesystem;
 import static com.bytezone.utility.Utility.formatText;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import com.bytezone.filesystem.AppleBlock.BlockType;
@@ -20,28 +31,76 @@ public class BlockReader
 // -----------------------------------------------------------------------------------//
 {
   private static final int SECTOR_SIZE = 256;
+  private static final BlockType[] blockTypeValues = BlockType.values ();
 
-  private final Buffer diskBuffer;
+  private final DiskImage diskImage;
   private String name;
 
   private DiskParameters diskParameters;
+  private DiskLayout diskLayout;
   private ByteCopier byteCopier;
 
-  private AppleBlock[] appleBlocks;
-  private List<AppleBlock> dirtyBlocks = new ArrayList<> ();
+  // Everything known about each block, indexed by block number. The AppleBlocks are
+  // flyweights that are created whenever they are needed.
+  private int totalBlocks;
+  private AppleFileSystem fileSystem;     // the first to ask for a block
+  private byte[] blockTypes;              // BlockType ordinal + 1, 0 = not seen yet
+  private short[] blockSubTypes;          // index into subTypes
+  private int[] fileOwners;               // index into owners
+  private byte[][] blockBuffers;          // local buffers, null until read
+  private Map<Integer, Object> userData;
+
+  private final List<String> subTypes = new ArrayList<> (List.of (""));
+  private final List<AppleFile> owners = new ArrayList<> (Collections.singleton (null));
+  private final Map<AppleFile, Integer> ownerIndex = new IdentityHashMap<> ();
+  private final BitSet dirtyBlocks = new BitSet ();      // indexed by block number
+  private final BitSet unsavedBlocks = new BitSet ();    // changed since the last save
+  private final FlushStatistics flushStatistics = new FlushStatistics ();
+
+  private byte emptyByte;                 // what an unused block is filled with
+  private BitSet emptyBlocks;             // built by the first isEmpty()
+
+  private int blockCacheSize;             // in bytes, 0 = keep every block buffer
+  private BlockCache blockCache;
+
+  private ExpansionBudget expansionBudget;  // null = embedded images are unlimited
+  private int expansionDepth;               // 0 = not embedded in another image
+  private ProbeRegistry probeRegistry;      // of the factory that read this disk
 
   // ---------------------------------------------------------------------------------//
   public BlockReader (Path path)
   // ---------------------------------------------------------------------------------//
+  {
+    this (path, false);
+  }
+
+  // A memory mapped file is never copied onto the heap unless something needs the
+  // whole byte array (see getDiskBuffer()). Blocks written back to it are kept in
+  // private pages until then.
+  // ---------------------------------------------------------------------------------//
+  public BlockReader (Path path, boolean memoryMapped)
+  // ---------------------------------------------------------------------------------//
   {
     if (!path.toFile ().exists ())
       throw new FileFormatException (String.format ("Path %s does not exist%n", path));
 
-    byte[] buffer = readAllBytes (path);
+    MappedByteBuffer mappedBuffer = memoryMapped ? mapFile (path) : null;
 
-    int diskLength = buffer.length == 143_488 ? 143_360 : buffer.length;
+    if (mappedBuffer == null)
+    {
+      byte[] buffer = readAllBytes (path);
 
-    diskBuffer = new Buffer (buffer, 0, diskLength);
+      int diskLength = buffer.length == 143_488 ? 143_360 : buffer.length;
+
+      diskImage = new DiskImage (new Buffer (buffer, 0, diskLength), path, 0);
+    }
+    else
+    {
+      int fileLength = mappedBuffer.capacity ();
+      int diskLength = fileLength == 143_488 ? 143_360 : fileLength;
+
+      diskImage = new DiskImage (mappedBuffer, diskLength, path, 0);
+    }
 
     name = path.toFile ().getName ();
   }
@@ -62,24 +121,47 @@ public class BlockReader
     if (diskLength == 143_488)
       diskLength = 143_360;
 
-    this.diskBuffer = new Buffer (diskBuffer, diskOffset, diskLength);
+    this.diskImage = new DiskImage (new Buffer (diskBuffer, diskOffset, diskLength));
     this.name = name;
   }
 
+  // Used for embedded file systems. The buffer is shared with the parent, any blocks
+  // written back are kept in private pages (see DiskImage).
   // ---------------------------------------------------------------------------------//
   public BlockReader (String name, Buffer dataBuffer)
   // ---------------------------------------------------------------------------------//
   {
-    this.diskBuffer = dataBuffer.copyBuffer ();
+    this.diskImage = new DiskImage (dataBuffer, true);      // copy-on-write
     this.name = name;
   }
 
+  // Shares the original's bytes, but has its own DiskParameters (see FileSystemProbe)
   // ---------------------------------------------------------------------------------//
-  BlockReader (BlockReader original)
+  public BlockReader (BlockReader original)
   // ---------------------------------------------------------------------------------//
   {
-    diskBuffer = original.diskBuffer;       //.copyBuffer ();
+    diskImage = original.diskImage;         //.copyBuffer ();
     name = original.name;
+    blockCacheSize = original.blockCacheSize;
+    expansionBudget = original.expansionBudget;
+    expansionDepth = original.expansionDepth;
+    probeRegistry = original.probeRegistry;
+  }
+
+  // Used by the disk headers to skip over themselves. Shares the original's bytes.
+  // ---------------------------------------------------------------------------------//
+  BlockReader (BlockReader original, int diskOffset, int diskLength)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (diskLength == 143_488)
+      diskLength = 143_360;
+
+    diskImage = original.diskImage.slice (diskOffset, diskLength);
+    name = original.name;
+    blockCacheSize = original.blockCacheSize;
+    expansionBudget = original.expansionBudget;
+    expansionDepth = original.expansionDepth;
+    probeRegistry = original.probeRegistry;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -88,17 +170,83 @@ public class BlockReader
   {
     this.diskParameters = diskParameters;
 
-    appleBlocks = getAppleBlockArray ();
+    totalBlocks = (diskImage.length () - 1) / diskParameters.bytesPerBlock () + 1;
+    diskLayout =
+        new DiskLayout (diskParameters, totalBlocks * diskParameters.bytesPerBlock ());
     byteCopier = getByteCopier ();
+    blockCache = new BlockCache (this, diskParameters.bytesPerBlock (), blockCacheSize);
+    emptyBlocks = null;
+
+    blockTypes = new byte[totalBlocks];
+    blockSubTypes = new short[totalBlocks];
+    fileOwners = new int[totalBlocks];
+    blockBuffers = new byte[totalBlocks][];
+    userData = null;
+    dirtyBlocks.clear ();
+    unsavedBlocks.clear ();
+  }
+
+  // Limit the memory used by the blocks' local buffers. Clean blocks are released
+  // (least recently used first) once the total exceeds maxBytes.
+  // ---------------------------------------------------------------------------------//
+  public synchronized void setBlockCacheSize (int maxBytes)
+  // ---------------------------------------------------------------------------------//
+  {
+    blockCacheSize = maxBytes;
+
+    if (blockCache != null)
+      blockCache.setMaxBytes (maxBytes);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public int getBlockCacheSize ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return blockCacheSize;
   }
 
   // ---------------------------------------------------------------------------------//
-  private AppleBlock[] getAppleBlockArray ()
+  void setExpansionBudget (ExpansionBudget expansionBudget, int expansionDepth)
   // ---------------------------------------------------------------------------------//
   {
-    int totalBlocks = (diskBuffer.length () - 1) / diskParameters.bytesPerBlock () + 1;
+    this.expansionBudget = expansionBudget;
+    this.expansionDepth = expansionDepth;
+  }
 
-    return new AppleBlock[totalBlocks];
+  // ---------------------------------------------------------------------------------//
+  ExpansionBudget getExpansionBudget ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return expansionBudget;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  int getExpansionDepth ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return expansionDepth;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  void setProbeRegistry (ProbeRegistry probeRegistry)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.probeRegistry = probeRegistry;
+  }
+
+  // null if the disk was not read by a FileSystemFactory
+  // ---------------------------------------------------------------------------------//
+  ProbeRegistry getProbeRegistry ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return probeRegistry;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public BlockCache getBlockCache ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return blockCache;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -106,12 +254,12 @@ public class BlockReader
   // ---------------------------------------------------------------------------------//
   {
     if (diskParameters.bytesPerBlock () == SECTOR_SIZE)
-      return new SingleSectorCopier (diskBuffer, diskParameters);
+      return new SingleSectorCopier (diskImage, diskLayout);
 
     if (diskParameters.interleave () == 0)
-      return new SingleBlockCopier (diskBuffer, diskParameters);
+      return new SingleBlockCopier (diskImage, diskLayout);
 
-    return new MultipleSectorCopier (diskBuffer, diskParameters);
+    return new MultipleSectorCopier (diskImage, diskLayout);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -137,15 +285,9 @@ public class BlockReader
     if (!isValidAddress (blockNo))
       return null;
 
-    AppleBlock block = appleBlocks[blockNo];
-    if (block == null)                             // first time here
-    {
-      block = new BlockProdos (fs, blockNo);
-      block.setBlockType (isEmpty (block) ? BlockType.EMPTY : BlockType.ORPHAN);
-      appleBlocks[blockNo] = block;
-    }
+    firstTime (fs, blockNo);
 
-    return block;
+    return new BlockProdos (fs, blockNo);
   }
 
   // this routine never reads the block (block type is provided)
@@ -156,16 +298,10 @@ public class BlockReader
     if (!isValidAddress (blockNo))
       return null;
 
-    AppleBlock block = appleBlocks[blockNo];
-    if (block == null)                             // first time here
-    {
-      block = new BlockProdos (fs, blockNo);
-      appleBlocks[blockNo] = block;
-    }
-
-    block.setBlockType (blockType);
+    setFileSystem (fs);
+    setBlockType (blockNo, blockType);
 
-    return block;
+    return new BlockProdos (fs, blockNo);
   }
 
   // this routine always reads the sector (in order to set block type)
@@ -176,17 +312,9 @@ public class BlockReader
     if (!isValidAddress (track, sector))
       return null;
 
-    int blockNo = track * diskParameters.blocksPerTrack () + sector;
-    AppleBlock block = appleBlocks[blockNo];
-
-    if (block == null)                             // first time here
-    {
-      block = new BlockDos (fs, track, sector);
-      block.setBlockType (isEmpty (block) ? BlockType.EMPTY : BlockType.ORPHAN);
-      appleBlocks[blockNo] = block;
-    }
+    firstTime (fs, track * diskParameters.blocksPerTrack () + sector);
 
-    return block;
+    return new BlockDos (fs, track, sector);
   }
 
   // this routine never reads the sector (block type is provided)
@@ -197,18 +325,165 @@ public class BlockReader
     if (!isValidAddress (track, sector))
       return null;
 
-    int blockNo = track * diskParameters.blocksPerTrack () + sector;
-    AppleBlock block = appleBlocks[blockNo];
+    setFileSystem (fs);
+    setBlockType (track * diskParameters.blocksPerTrack () + sector, blockType);
+
+    return new BlockDos (fs, track, sector);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void firstTime (AppleFileSystem fs, int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    setFileSystem (fs);
+
+    if (blockTypes[blockNo] == 0)                   // first time here
+      setBlockType (blockNo, isEmpty (blockNo) ? BlockType.EMPTY : BlockType.ORPHAN);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void setFileSystem (AppleFileSystem fs)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (fileSystem == null)
+      fileSystem = Objects.requireNonNull (fs, "File System is null");
+  }
+
+  // ---------------------------------------------------------------------------------//
+  void setBlockType (int blockNo, BlockType blockType)
+  // ---------------------------------------------------------------------------------//
+  {
+    blockTypes[blockNo] = blockType == null ? 0 : (byte) (blockType.ordinal () + 1);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  BlockType getBlockType (int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    int type = blockTypes[blockNo];
+    return type == 0 ? null : blockTypeValues[type - 1];
+  }
+
+  // there are only a handful of different subtypes
+  // ---------------------------------------------------------------------------------//
+  void setBlockSubType (int blockNo, String blockSubType)
+  // ---------------------------------------------------------------------------------//
+  {
+    int index = subTypes.indexOf (blockSubType);
+    if (index < 0)
+    {
+      index = subTypes.size ();
+      subTypes.add (blockSubType);
+    }
+
+    blockSubTypes[blockNo] = (short) index;
+  }
 
-    if (block == null)                             // first time here
+  // ---------------------------------------------------------------------------------//
+  String getBlockSubType (int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    return subTypes.get (blockSubTypes[blockNo]);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  void setFileOwner (int blockNo, AppleFile appleFile)
+  // ---------------------------------------------------------------------------------//
+  {
+    Integer index = 0;
+
+    if (appleFile != null)
     {
-      block = new BlockDos (fs, track, sector);
-      appleBlocks[blockNo] = block;
+      index = ownerIndex.get (appleFile);
+      if (index == null)
+      {
+        index = owners.size ();
+        owners.add (appleFile);
+        ownerIndex.put (appleFile, index);
+      }
     }
 
-    block.setBlockType (blockType);
+    fileOwners[blockNo] = index;
+  }
 
-    return block;
+  // ---------------------------------------------------------------------------------//
+  AppleFile getFileOwner (int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    return owners.get (fileOwners[blockNo]);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  void setUserData (int blockNo, Object data)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (userData == null)
+      userData = new HashMap<> ();
+
+    userData.put (blockNo, data);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  Object getUserData (int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    return userData == null ? null : userData.get (blockNo);
+  }
+
+  // The block's local buffer, reading it from the disk if necessary. Synchronized
+  // because files can be read by several threads at once (see Extractor).
+  // ---------------------------------------------------------------------------------//
+  synchronized byte[] getBuffer (AppleBlock block)
+  // ---------------------------------------------------------------------------------//
+  {
+    int blockNo = block.getBlockNo ();
+    byte[] buffer = blockBuffers[blockNo];      // the cache may release it
+
+    if (buffer == null)
+    {
+      buffer = blockBuffers[blockNo] = read (block);
+      blockCache.miss (blockNo);
+    }
+    else
+      blockCache.hit (blockNo);
+
+    return buffer;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  void setBuffer (AppleBlock block, byte[] buffer)
+  // ---------------------------------------------------------------------------------//
+  {
+    blockBuffers[block.getBlockNo ()] = buffer;
+    dirtyBlocks.set (block.getBlockNo ());
+    unsavedBlocks.set (block.getBlockNo ());
+  }
+
+  // null if the block has not been read, or its buffer was released
+  // ---------------------------------------------------------------------------------//
+  byte[] getLocalBuffer (int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    return blockBuffers[blockNo];
+  }
+
+  // called by the BlockCache, the buffer will be read again if needed
+  // ---------------------------------------------------------------------------------//
+  void releaseBuffer (int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    assert !isPinned (blockNo);
+
+    blockBuffers[blockNo] = null;
+  }
+
+  // dirty blocks haven't been written yet, and catalog entries keep references to the
+  // buffers of FS_DATA blocks
+  // ---------------------------------------------------------------------------------//
+  boolean isPinned (int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    return dirtyBlocks.get (blockNo) || getBlockType (blockNo) == BlockType.FS_DATA;
   }
 
   // Get the sector pointed to by the track/sector at buffer[offset]
@@ -251,14 +526,108 @@ public class BlockReader
   {
     byte[] blockBuffer = new byte[diskParameters.bytesPerBlock () * blocks.size ()];
 
-    int ptr = 0;
-    for (int i = 0; i < blocks.size (); i++)
+    read (blocks, blockBuffer, 0);
+
+    return blockBuffer;
+  }
+
+  // Gather the blocks into the buffer. Pieces that follow each other on the disk as
+  // well as in the buffer are copied in a single run. Null blocks (gaps in sparse
+  // files) are left as zeroes.
+  // ---------------------------------------------------------------------------------//
+  public void read (List<AppleBlock> blocks, byte[] buffer, int bufferOffset)
+  // ---------------------------------------------------------------------------------//
+  {
+    int pieceSize = byteCopier.getPieceSize ();
+    int piecesPerBlock = diskParameters.bytesPerBlock () / pieceSize;
+
+    int runStart = -1;            // disk offset
+    int runLength = 0;
+    int runTarget = 0;            // buffer offset
+
+    int ptr = bufferOffset;
+
+    for (AppleBlock block : blocks)
     {
-      byteCopier.read (blocks.get (i), blockBuffer, ptr);
-      ptr += diskParameters.bytesPerBlock ();
+      if (block == null)
+      {
+        ptr += diskParameters.bytesPerBlock ();
+        continue;
+      }
+
+      for (int pieceNo = 0; pieceNo < piecesPerBlock; pieceNo++)
+      {
+        int diskOffset = byteCopier.getDiskOffset (block, pieceNo);
+
+        if (diskOffset != runStart + runLength || ptr != runTarget + runLength)
+        {
+          copyRun (runStart, buffer, runTarget, runLength);
+          runStart = diskOffset;
+          runTarget = ptr;
+          runLength = 0;
+        }
+
+        runLength += pieceSize;
+        ptr += pieceSize;
+      }
     }
 
-    return blockBuffer;
+    copyRun (runStart, buffer, runTarget, runLength);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void copyRun (int diskOffset, byte[] buffer, int bufferOffset, int length)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (length == 0)
+      return;
+
+    int xfrBytes = Math.min (length, diskImage.length () - diskOffset);
+
+    if (xfrBytes > 0)
+      diskImage.get (diskOffset, buffer, bufferOffset, xfrBytes);
+
+    if (xfrBytes < length)
+      System.out.printf ("Disk offset %,d + %,d out of range%n", diskOffset, length);
+  }
+
+  // A read-only slice of the disk holding the block. Returns null when the block is
+  // assembled from interleaved sectors and has to be copied (see read()).
+  // ---------------------------------------------------------------------------------//
+  public ByteBuffer view (AppleBlock block)
+  // ---------------------------------------------------------------------------------//
+  {
+    return byteCopier.view (block);
+  }
+
+  // A single read-only slice of the disk covering every block, but only when they
+  // are stored one after the other and none of them has unwritten changes.
+  // ---------------------------------------------------------------------------------//
+  public ByteBuffer view (List<AppleBlock> blocks)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (blocks.isEmpty ())
+      return null;
+
+    int blockSize = diskParameters.bytesPerBlock ();
+    int start = -1;
+    int nextOffset = -1;
+
+    for (AppleBlock block : blocks)
+    {
+      if (block == null || block.isDirty ())
+        return null;
+
+      int offset = byteCopier.getDiskOffset (block);
+      if (offset < 0 || (start >= 0 && offset != nextOffset))
+        return null;
+
+      if (start < 0)
+        start = offset;
+      nextOffset = offset + blockSize;
+    }
+
+    return diskImage.view (start, nextOffset - start);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -269,19 +638,59 @@ public class BlockReader
       write (blocks.get (i));
   }
 
-  // write the block's local buffer back to the disk buffer
+  // write the block's local buffer back to the disk buffer, it still has to be saved
   // ---------------------------------------------------------------------------------//
   public void write (AppleBlock block)
   // ---------------------------------------------------------------------------------//
   {
     byteCopier.write (block);
+    unsavedBlocks.set (block.getBlockNo ());
   }
 
+  // this will copy a memory mapped file, or one with private pages, onto the heap
   // ---------------------------------------------------------------------------------//
   Buffer getDiskBuffer ()
   // ---------------------------------------------------------------------------------//
   {
-    return diskBuffer;
+    return diskImage.getBuffer ();
+  }
+
+  // A fast hash of the disk's contents, used to tell whether an image has changed
+  // ---------------------------------------------------------------------------------//
+  public long getContentHash ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskImage.hash ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public boolean isMemoryMapped ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskImage.isMapped ();
+  }
+
+  // Read a few bytes (eg a disk header) without needing the disk buffer. Any bytes
+  // past the end of the disk are returned as zero.
+  // ---------------------------------------------------------------------------------//
+  byte[] readBytes (int offset, int length)
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskImage.read (offset, length);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  boolean isMagic (int offset, byte[] magic)
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskImage.isMagic (offset, magic);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  boolean byteAt (int offset, byte value)
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskImage.byteAt (offset, value);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -291,11 +700,34 @@ public class BlockReader
     return diskParameters;
   }
 
+  // ---------------------------------------------------------------------------------//
+  public DiskLayout getDiskLayout ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskLayout;
+  }
+
+  // Copy the disk into a new buffer, moving every sector to where the other disk
+  // parameters would expect it (eg DOS order <-> Prodos order). Blocks that have
+  // not been written back to the disk buffer are not included.
+  // ---------------------------------------------------------------------------------//
+  public byte[] remap (DiskParameters newParameters)
+  // ---------------------------------------------------------------------------------//
+  {
+    DiskLayout newLayout =
+        new DiskLayout (newParameters, totalBlocks * diskParameters.bytesPerBlock ());
+    byte[] buffer = new byte[diskImage.length ()];
+
+    diskLayout.remap (diskImage.getByteBuffer (), newLayout, buffer);
+
+    return buffer;
+  }
+
   // ---------------------------------------------------------------------------------//
   int getDiskLength ()
   // ---------------------------------------------------------------------------------//
   {
-    return diskBuffer.length ();
+    return diskImage.length ();
   }
 
   // ---------------------------------------------------------------------------------//
@@ -323,7 +755,7 @@ public class BlockReader
   int getTotalBlocks ()
   // ---------------------------------------------------------------------------------//
   {
-    return appleBlocks.length;
+    return totalBlocks;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -357,45 +789,301 @@ public class BlockReader
   }
 
   // ---------------------------------------------------------------------------------//
-  boolean isEmpty (AppleBlock block)
+  private MappedByteBuffer mapFile (Path path)
   // ---------------------------------------------------------------------------------//
   {
-    for (byte b : block.getBuffer ())
-      if (b != 0)               // won't work for CPM disks
-        return false;
+    try (FileChannel channel = FileChannel.open (path, StandardOpenOption.READ))
+    {
+      if (channel.size () > Integer.MAX_VALUE)
+        throw new FileFormatException (String.format ("Path %s is too large%n", path));
 
-    return true;
+      return channel.map (MapMode.READ_ONLY, 0, channel.size ());
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace ();
+      return null;                    // fall back to reading the file
+    }
   }
 
+  // CPM fills unused blocks with 0xE5, everything else uses zero
   // ---------------------------------------------------------------------------------//
-  public void markDirty (AppleBlock dirtyBlock)
+  void setEmptyByte (byte emptyByte)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (this.emptyByte != emptyByte)
+    {
+      this.emptyByte = emptyByte;
+      emptyBlocks = null;
+    }
+  }
+
+  // Whether the block held nothing but the empty byte when the disk was scanned. The
+  // whole disk is scanned the first time, so this never reads the block itself.
+  // ---------------------------------------------------------------------------------//
+  boolean isEmpty (int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (emptyBlocks == null)
+      emptyBlocks = findEmptyBlocks ();
+
+    return emptyBlocks.get (blockNo);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private BitSet findEmptyBlocks ()
   // ---------------------------------------------------------------------------------//
   {
-    assert dirtyBlock.isDirty ();
+    int bytesPerBlock = diskParameters.bytesPerBlock ();
+    int pieceSize = byteCopier.getPieceSize ();
+    int piecesPerBlock = bytesPerBlock / pieceSize;
+    int totalPieces = (diskImage.length () - 1) / pieceSize + 1;
+
+    BitSet emptyPieces = diskImage.findFilled (pieceSize, emptyByte);   // disk order
+    BitSet emptyBlocks = new BitSet (totalBlocks);
+
+    OUT: for (int blockNo = 0; blockNo < totalBlocks; blockNo++)
+    {
+      for (int pieceNo = 0; pieceNo < piecesPerBlock; pieceNo++)
+      {
+        int logicalOffset = blockNo * bytesPerBlock + pieceNo * pieceSize;
+        int diskPiece = diskLayout.getOffset (logicalOffset) / pieceSize;
+
+        // anything past the end of the disk counts as empty
+        if (diskPiece < totalPieces && !emptyPieces.get (diskPiece))
+          continue OUT;
+      }
 
-    if (!dirtyBlocks.contains (dirtyBlock))
-      dirtyBlocks.add (dirtyBlock);
+      emptyBlocks.set (blockNo);
+    }
+
+    return emptyBlocks;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public void markDirty (AppleBlock dirtyBlock)
+  // ---------------------------------------------------------------------------------//
+  {
+    dirtyBlocks.set (dirtyBlock.getBlockNo ());
+    unsavedBlocks.set (dirtyBlock.getBlockNo ());
   }
 
   // ---------------------------------------------------------------------------------//
   public void markClean (AppleBlock dirtyBlock)
   // ---------------------------------------------------------------------------------//
   {
-    assert !dirtyBlock.isDirty ();
+    dirtyBlocks.clear (dirtyBlock.getBlockNo ());
+  }
 
-    if (dirtyBlocks.contains (dirtyBlock))
-      dirtyBlocks.remove (dirtyBlock);
+  // ---------------------------------------------------------------------------------//
+  boolean isDirty (int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    return dirtyBlocks.get (blockNo);
   }
 
+  // ---------------------------------------------------------------------------------//
+  public int getTotalDirtyBlocks ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return dirtyBlocks.cardinality ();
+  }
+
+  // dirty blocks, and blocks already written to the disk buffer but not to the file
+  // ---------------------------------------------------------------------------------//
+  public int getTotalUnsavedBlocks ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return unsavedBlocks.cardinality ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  List<List<AppleBlock>> getDirtyRuns ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return getRuns (dirtyBlocks);
+  }
+
+  // The blocks in the order they are stored on the disk, split into runs of blocks
+  // that follow each other without a gap. A block whose sectors are scattered by the
+  // interleave is always a run on its own.
+  // ---------------------------------------------------------------------------------//
+  private List<List<AppleBlock>> getRuns (BitSet blockNos)
+  // ---------------------------------------------------------------------------------//
+  {
+    List<AppleBlock> blocks = new ArrayList<> (blockNos.cardinality ());
+
+    for (int blockNo = blockNos.nextSetBit (0); blockNo >= 0;
+        blockNo = blockNos.nextSetBit (blockNo + 1))
+      blocks.add (new BlockProdos (fileSystem, blockNo));
+
+    if (diskLayout.isInterleaved ())          // block order is not disk order
+      blocks.sort (
+          Comparator.comparingInt (block -> byteCopier.getDiskOffset (block, 0)));
+
+    List<List<AppleBlock>> runs = new ArrayList<> ();
+    List<AppleBlock> run = null;
+    int bytesPerBlock = diskParameters.bytesPerBlock ();
+    int nextOffset = -1;
+
+    for (AppleBlock block : blocks)
+    {
+      int offset = byteCopier.getDiskOffset (block);      // -1 if not contiguous
+      if (run == null || offset < 0 || offset != nextOffset)
+      {
+        run = new ArrayList<> ();
+        runs.add (run);
+      }
+
+      run.add (block);
+      nextOffset = offset < 0 ? -1 : offset + bytesPerBlock;
+    }
+
+    return runs;
+  }
+
+  // Write every dirty block back to the disk buffer in disk order. Each block is still
+  // copied from its own local buffer, the runs are only counted here.
   // ---------------------------------------------------------------------------------//
   void clean ()
   // ---------------------------------------------------------------------------------//
   {
-    for (AppleBlock block : dirtyBlocks)
+    if (!dirtyBlocks.isEmpty ())
+      clean (getDirtyRuns ());
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void clean (List<List<AppleBlock>> runs)
+  // ---------------------------------------------------------------------------------//
+  {
+    int totalBlocks = 0;
+
+    for (List<AppleBlock> run : runs)
+      for (AppleBlock block : run)
+      {
+        write (block);
+        dirtyBlocks.clear (block.getBlockNo ());
+        blockCache.track (block.getBlockNo ());           // no longer pinned
+        ++totalBlocks;
+      }
+
+    flushStatistics.add (totalBlocks, runs.size (),
+        totalBlocks * diskParameters.bytesPerBlock ());
+  }
+
+  // only a disk that was read directly from a file can be saved back to it
+  // ---------------------------------------------------------------------------------//
+  public boolean canSave ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskImage.getPath () != null;
+  }
+
+  // Write every block changed since the last save back to the file the disk was read
+  // from, one positional write per run. This includes blocks that clean() or write()
+  // have already copied to the disk buffer. The file offset skips any 2img or DiskCopy
+  // header. Nothing is marked as saved if the file can't be written.
+  // ---------------------------------------------------------------------------------//
+  public void save (boolean force) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    if (!canSave ())
+      throw new IOException (String.format ("%s was not read from a file", name));
+
+    if (unsavedBlocks.isEmpty ())
+      return;
+
+    List<List<AppleBlock>> runs = getRuns (unsavedBlocks);
+
+    try (FileChannel channel =
+        FileChannel.open (diskImage.getPath (), StandardOpenOption.WRITE))
+    {
+      for (List<AppleBlock> run : runs)
+        writeRun (channel, run);
+
+      if (force)
+        channel.force (false);
+    }
+
+    clean ();                       // keep the disk buffer in step with the file
+    for (List<AppleBlock> run : runs)
+      for (AppleBlock block : run)
+        unsavedBlocks.clear (block.getBlockNo ());
+  }
+
+  // Write bytes that are outside the disk (eg a header's checksum) to the file the
+  // disk was read from, and to the disk buffer. The offset is from the start of the
+  // disk, as for readBytes().
+  // ---------------------------------------------------------------------------------//
+  void saveBytes (int offset, byte[] bytes, boolean force) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    if (!canSave ())
+      throw new IOException (String.format ("%s was not read from a file", name));
+
+    try (FileChannel channel =
+        FileChannel.open (diskImage.getPath (), StandardOpenOption.WRITE))
+    {
+      writeBytes (channel, offset, ByteBuffer.wrap (bytes));
+
+      if (force)
+        channel.force (false);
+    }
+
+    diskImage.put (offset, bytes, 0, bytes.length);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void writeRun (FileChannel channel, List<AppleBlock> run) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    int bytesPerBlock = diskParameters.bytesPerBlock ();
+    int offset = byteCopier.getDiskOffset (run.get (0));
+
+    if (offset < 0)                 // a single block with its sectors scattered
+    {
+      AppleBlock block = run.get (0);
+      byte[] blockBuffer = block.getBuffer ();
+      int pieceSize = byteCopier.getPieceSize ();
+
+      for (int pieceNo = 0; pieceNo < bytesPerBlock / pieceSize; pieceNo++)
+        writeBytes (channel, byteCopier.getDiskOffset (block, pieceNo),
+            ByteBuffer.wrap (blockBuffer, pieceNo * pieceSize, pieceSize));
+
+      return;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate (run.size () * bytesPerBlock);
+    for (AppleBlock block : run)
+      buffer.put (block.getBuffer (), 0, bytesPerBlock);
+
+    writeBytes (channel, offset, buffer.flip ());
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void writeBytes (FileChannel channel, int diskOffset, ByteBuffer buffer)
+      throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    int xfrBytes = Math.min (buffer.remaining (), diskImage.length () - diskOffset);
+    if (diskOffset < 0 || xfrBytes <= 0)
     {
-      write (block);
-      block.markClean ();
+      System.out.printf ("Disk offset %,d out of range%n", diskOffset);
+      return;
     }
+
+    buffer.limit (buffer.position () + xfrBytes);
+    long position = diskImage.getFileOffset () + diskOffset;
+
+    while (buffer.hasRemaining ())
+      position += channel.write (buffer, position);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public FlushStatistics getFlushStatistics ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return flushStatistics;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -406,12 +1094,36 @@ public class BlockReader
     StringBuilder text = new StringBuilder ();
 
     formatText (text, "Name", name);
-    formatText (text, "Actual buffer length", 8, diskBuffer.data ().length);
-    formatText (text, "File system offset", 8, diskBuffer.offset ());
-    formatText (text, "File system length", 8, diskBuffer.length ());
+    if (diskImage.isMapped ())
+      formatText (text, "Memory mapped", true);
+    else if (diskImage.isShared ())
+      formatText (text, "Copy-on-write", true);
+    else
+    {
+      Buffer diskBuffer = diskImage.getBuffer ();
+      formatText (text, "Actual buffer length", 8, diskBuffer.data ().length);
+      formatText (text, "File system offset", 8, diskBuffer.offset ());
+    }
+    formatText (text, "File system length", 8, diskImage.length ());
+    if (diskImage.isShared ())
+      formatText (text, "Private pages", 6, diskImage.getTotalPrivatePages ());
     formatText (text, "Total blocks", 6, getTotalBlocks ());
     text.append ("\n");
     text.append (diskParameters);
+    text.append ("\n");
+    text.append (diskLayout);
+
+    if (blockCache != null && blockCache.getMaxBytes () > 0)
+    {
+      text.append ("\n\n");
+      text.append (blockCache);
+    }
+
+    if (flushStatistics.getFlushes () > 0)
+    {
+      text.append ("\n\n");
+      text.append (flushStatistics);
+    }
 
     return Utility.rtrim (text);
   }
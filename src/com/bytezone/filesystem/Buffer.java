@@ -1,5 +1,7 @@
 package com.bytezone.filesystem;
 
+import java.util.zip.CRC32C;
+
 import com.bytezone.utility.Utility;
 
 // -----------------------------------------------------------------------------------//
@@ -41,6 +43,15 @@ public record Buffer (byte[] data, int offset, int length)
     return newData;
   }
 
+  // The bytes in an array of their own, which is only copied if this buffer is a slice
+  // of a bigger one (eg an embedded disk). The array must not be changed.
+  // ---------------------------------------------------------------------------------//
+  public byte[] exactData ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return offset == 0 && length == data.length ? data : copyData ();
+  }
+
   // ---------------------------------------------------------------------------------//
   public Buffer copyBuffer ()
   // ---------------------------------------------------------------------------------//
@@ -48,6 +59,17 @@ public record Buffer (byte[] data, int offset, int length)
     return new Buffer (copyData (), 0, length);
   }
 
+  // CRC32C of the bytes and their length, the same as BlockReader.getContentHash()
+  // ---------------------------------------------------------------------------------//
+  public long hash ()
+  // ---------------------------------------------------------------------------------//
+  {
+    CRC32C crc = new CRC32C ();
+    crc.update (data, offset, length);
+
+    return (long) length << 32 | crc.getValue ();
+  }
+
   // ---------------------------------------------------------------------------------//
   public boolean isMagic (int offset, byte[] magic)
   // ---------------------------------------------------------------------------------//
@@ -0,0 +1,713 @@
+package com.bytezone.filesystem;
+
+import static com.bytezone.filesystem.FileSystemFactory.bin;
+import static com.bytezone.filesystem.FileSystemFactory.cpam;
+import static com.bytezone.filesystem.FileSystemFactory.cpm;
+import static com.bytezone.filesystem.FileSystemFactory.dos1;
+import static com.bytezone.filesystem.FileSystemFactory.dos2;
+import static com.bytezone.filesystem.FileSystemFactory.dos31;
+import static com.bytezone.filesystem.FileSystemFactory.dos4;
+import static com.bytezone.filesystem.FileSystemFactory.prodos1;
+import static com.bytezone.filesystem.FileSystemFactory.prodos2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.bytezone.filesystem.AppleFileSystem.FileSystemType;
+import com.bytezone.filesystem.FileSystemIdentity.Match;
+import com.bytezone.filesystem.ProbeRegistry.Group;
+import com.bytezone.filesystem.ProbeRegistry.ProbeDescriptor;
+
+// -----------------------------------------------------------------------------------//
+// The probes for every file system this library knows about, and the constraints that
+// decide whether each one is worth running. A constraint only looks at the disk's
+// length, magic number or a few signature bytes (VTOC version, Prodos directory entry
+// sizes, Pascal volume header, LBR header). A probe whose constraint fails would
+// reject the disk straight away.
+// -----------------------------------------------------------------------------------//
+final class BuiltInProbes
+// -----------------------------------------------------------------------------------//
+{
+  private static final int SECTOR_35_13_SIZE = 116_480;
+  private static final int SECTOR_35_16_SIZE = 143_360;
+  private static final int SECTOR_35_32_SIZE = 286_720;
+  private static final int SECTOR_40_16_SIZE = 163_840;
+  private static final int SECTOR_40_32_SIZE = 327_680;
+  private static final int SECTOR_48_16_SIZE = 196_608;
+  private static final int SECTOR_48_32_SIZE = 393_216;
+  private static final int UNIDOS_SIZE = 819_200;
+  private static final int CPAM_SIZE = 819_200;
+
+  // where the first sector of block 2 (Prodos and Pascal catalogs) is for each order
+  private static final int[] CATALOG_OFFSETS =
+      { 0x400, new DiskLayout (prodos2, SECTOR_35_16_SIZE).getOffset (0x400) };
+
+  private static final boolean debug = false;
+
+  // ---------------------------------------------------------------------------------//
+  private BuiltInProbes ()
+  // ---------------------------------------------------------------------------------//
+  {
+  }
+
+  // In priority order within each group. The names are the ones DetectionCache and
+  // ProbeStatistics files use, so they must never change.
+  // ---------------------------------------------------------------------------------//
+  static void register (ProbeRegistry registry)
+  // ---------------------------------------------------------------------------------//
+  {
+    // DOS can be a hybrid with Pascal, Prodos or CPM
+    registry.register (new ProbeDescriptor ("DOS33", Group.DOS,
+        length (SECTOR_35_16_SIZE).and (dos3Vtoc (16)), BuiltInProbes::probeDos33));
+    registry.register (new ProbeDescriptor ("DOS4", Group.DOS,
+        BuiltInProbes::dos4Vtoc, BuiltInProbes::probeDos4));
+
+    registry.register (new ProbeDescriptor ("PASCAL", Group.OTHER,
+        BuiltInProbes::pascalHeader, BuiltInProbes::probePascal));
+    registry.register (new ProbeDescriptor ("PRODOS", Group.OTHER,
+        BuiltInProbes::prodosHeader, BuiltInProbes::probeProdos));
+    registry.register (new ProbeDescriptor ("CPM", Group.OTHER,
+        length (SECTOR_35_16_SIZE), BuiltInProbes::probeCpm));
+
+    // these file systems cannot be hybrids
+    registry.register (new ProbeDescriptor ("DOS31", Group.SINGLE,
+        length (SECTOR_35_13_SIZE).and (dos3Vtoc (13)), BuiltInProbes::probeDos31));
+    registry.register (new ProbeDescriptor ("CPM2", Group.SINGLE,
+        length (CPAM_SIZE), BuiltInProbes::probeCpm2));
+    registry.register (new ProbeDescriptor ("LBR", Group.SINGLE,
+        BuiltInProbes::lbrHeader, BuiltInProbes::probeLbr));
+    registry.register (new ProbeDescriptor ("NUFX", Group.SINGLE,
+        magic (FsNuFX.NuFile), BuiltInProbes::probeNuFx));
+    registry.register (new ProbeDescriptor ("BINARY2", Group.SINGLE,
+        magic (FsBinary2.BIN2), BuiltInProbes::probeBinary2));
+    registry.register (new ProbeDescriptor ("ZIP", Group.SINGLE,
+        magic (FsZip.ZIP), BuiltInProbes::probeZip));
+    registry.register (new ProbeDescriptor ("GZIP", Group.SINGLE,
+        magic (FsGzip.GZIP), BuiltInProbes::probeGZip));
+    registry.register (new ProbeDescriptor ("UNIDOS", Group.SINGLE,
+        length (UNIDOS_SIZE).and (dos3Vtoc (32)), BuiltInProbes::probeUnidos));
+    registry.register (new ProbeDescriptor ("WOZ", Group.SINGLE,
+        magic (FsWoz.WOZ_1, FsWoz.WOZ_2), BuiltInProbes::probeWoz));
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static Predicate<BlockReader> length (int diskLength)
+  // ---------------------------------------------------------------------------------//
+  {
+    return blockReader -> blockReader.getDiskLength () == diskLength;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static Predicate<BlockReader> magic (byte[]... magics)
+  // ---------------------------------------------------------------------------------//
+  {
+    return blockReader ->
+    {
+      for (byte[] magic : magics)
+        if (blockReader.isMagic (0, magic))
+          return true;
+
+      return false;
+    };
+  }
+
+  // DOS 3.x VTOC version byte, the VTOC is always in sector 0 of track 17
+  // ---------------------------------------------------------------------------------//
+  private static Predicate<BlockReader> dos3Vtoc (int sectorsPerTrack)
+  // ---------------------------------------------------------------------------------//
+  {
+    return blockReader ->
+    {
+      int version = vtocVersion (blockReader, sectorsPerTrack);
+      return version >= 0x01 && version <= 0x04;
+    };
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static boolean dos4Vtoc (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    int sectorsPerTrack = switch (blockReader.getDiskLength ())
+    {
+      case SECTOR_35_16_SIZE, SECTOR_40_16_SIZE, SECTOR_48_16_SIZE -> 16;
+      case SECTOR_35_32_SIZE, SECTOR_40_32_SIZE, SECTOR_48_32_SIZE -> 32;
+      default -> 0;
+    };
+
+    if (sectorsPerTrack == 0)
+      return false;
+
+    int version = vtocVersion (blockReader, sectorsPerTrack);
+    return version >= 0x41 && version <= 0x45;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static int vtocVersion (BlockReader blockReader, int sectorsPerTrack)
+  // ---------------------------------------------------------------------------------//
+  {
+    return blockReader.readBytes (17 * sectorsPerTrack * 256 + 3, 1)[0] & 0xFF;
+  }
+
+  // volume directory header in block 2, in either sector order
+  // ---------------------------------------------------------------------------------//
+  private static boolean prodosHeader (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (blockReader.getDiskLength () < SECTOR_35_16_SIZE)
+      return false;
+
+    for (int offset : CATALOG_OFFSETS)
+    {
+      byte[] buffer = blockReader.readBytes (offset, 0x25);
+
+      if ((buffer[0x23] & 0xFF) == ProdosConstants.ENTRY_SIZE
+          && (buffer[0x24] & 0xFF) == ProdosConstants.ENTRIES_PER_BLOCK)
+        return true;
+    }
+
+    return false;
+  }
+
+  // volume header in block 2, in either sector order
+  // ---------------------------------------------------------------------------------//
+  private static boolean pascalHeader (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (blockReader.getDiskLength () < SECTOR_35_16_SIZE)
+      return false;
+
+    for (int offset : CATALOG_OFFSETS)
+    {
+      byte[] buffer = blockReader.readBytes (offset, 6);
+
+      if (buffer[0] == 0 && buffer[1] == 0 && buffer[2] == 6 && buffer[3] == 0
+          && buffer[4] == 0 && buffer[5] == 0)
+        return true;
+    }
+
+    return false;
+  }
+
+  // the first LBR entry has no name
+  // ---------------------------------------------------------------------------------//
+  private static boolean lbrHeader (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    byte[] header = blockReader.readBytes (0, 2);
+    return header[0] == 0 && (header[1] & 0x7F) == 0x20;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeDos31 (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (blockReader.getDiskLength () != SECTOR_35_13_SIZE)
+      return ProbeResult.noMatch ("Dos31: disk length");
+
+    if (new FileSystemIdentifier (blockReader).dos31 () == null)
+      return ProbeResult.noMatch ("Dos31: no VTOC or catalog");
+
+    try
+    {
+      BlockReader dos31Reader = new BlockReader (blockReader);
+      dos31Reader.setParameters (dos31);
+
+      FsDos3 fs = new FsDos3 (dos31Reader);
+
+      if (fs.getTotalCatalogBlocks () > 0)
+      {
+        fs.readCatalogBlocks ();
+        return ProbeResult.match (fs);
+      }
+    }
+    catch (FileFormatException e)
+    {
+      if (debug)
+        System.out.println (e);
+
+      return ProbeResult.partial (e.toString ());
+    }
+
+    return ProbeResult.partial ("Dos31: no catalog sectors");
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeDos33 (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (debug)
+      System.out.println ("Checking Dos33");
+
+    if (blockReader.getDiskLength () != SECTOR_35_16_SIZE)
+      return ProbeResult.noMatch ("Dos33: disk length");
+
+    if (new FileSystemIdentifier (blockReader).dos33 () == null)
+      return ProbeResult.noMatch ("Dos33: no VTOC or catalog");
+
+    List<FsDos3> fsList = new ArrayList<> (2);
+    String reason = "Dos33: no catalog sectors";
+
+    for (int i = 0; i < 2; i++)
+      try
+      {
+        BlockReader dos33Reader = new BlockReader (blockReader);
+        dos33Reader.setParameters (i == 0 ? dos1 : dos2);
+
+        FsDos3 fs = new FsDos3 (dos33Reader);
+
+        if (debug)
+          System.out.printf ("Found %d catalog blocks%n", fs.getTotalCatalogBlocks ());
+
+        if (fs.getTotalCatalogBlocks () > 0)
+        {
+          fsList.add (fs);
+          if (fs.getTotalCatalogBlocks () >= 15)        // best possible result
+            break;
+        }
+      }
+      catch (FileFormatException e)
+      {
+        if (debug)
+          System.out.println (e);
+
+        reason = e.toString ();
+      }
+
+    if (debug)
+      System.out.println ("Tried both interleaves - found " + fsList.size ());
+
+    FsDos3 fs = null;
+
+    switch (fsList.size ())
+    {
+      case 1:
+        fs = fsList.get (0);
+        break;
+
+      case 2:
+        FsDos3 fs0 = fsList.get (0);
+        FsDos3 fs1 = fsList.get (1);
+
+        fs = fs0.getTotalCatalogBlocks () > fs1.getTotalCatalogBlocks () ? fs0 : fs1;
+    }
+
+    if (fs == null)
+      return ProbeResult.partial (reason);
+
+    fs.readCatalogBlocks ();
+
+    if (debug)
+      System.out.println ("Finished Dos33");
+
+    return ProbeResult.match (fs);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeDos4 (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (debug)
+      System.out.println ("Checking Dos4");
+
+    Match match = new FileSystemIdentifier (blockReader).dos4 ();
+    if (match == null)
+      return ProbeResult.noMatch ("Dos4: no VTOC or catalog");
+
+    try
+    {
+      BlockReader dos4Reader = new BlockReader (blockReader);
+      dos4Reader.setParameters (match.diskParameters ());
+
+      FsDos4 fs = new FsDos4 (dos4Reader);
+
+      if (fs.getTotalCatalogBlocks () > 0)
+      {
+        fs.readCatalogBlocks ();
+        return ProbeResult.match (fs);
+      }
+    }
+    catch (FileFormatException e)
+    {
+      if (debug)
+        System.out.println (e);
+
+      return ProbeResult.partial (e.toString ());
+    }
+
+    return ProbeResult.partial ("Dos4: no catalog sectors");
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeUnidos (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (blockReader.getDiskLength () != UNIDOS_SIZE)
+      return ProbeResult.noMatch ("Unidos: disk length");
+
+    if (new FileSystemIdentifier (blockReader).unidos () == null)
+      return ProbeResult.noMatch ("Unidos: no VTOC or catalog");
+
+    try
+    {
+      BlockReader unidosReader = new BlockReader (blockReader);
+      unidosReader.setParameters (dos4);
+
+      FsUnidos fs = new FsUnidos (unidosReader);
+
+      if (fs.getFileSystems ().size () == 2)  // should be exactly 2 dos file systems
+        return ProbeResult.match (fs);
+    }
+    catch (FileFormatException e)
+    {
+      if (debug)
+        System.out.println (e);
+
+      return ProbeResult.partial (e.toString ());
+    }
+
+    return ProbeResult.partial ("Unidos: expected two file systems");
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeProdos (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    int diskLength = blockReader.getDiskLength ();
+    if (debug)
+      System.out.printf ("Checking Prodos (size %,d)%n", diskLength);
+
+    // should check for common HD sizes
+    if (diskLength < SECTOR_35_16_SIZE)
+      return ProbeResult.noMatch ("Prodos: disk length");
+
+    if (new FileSystemIdentifier (blockReader).prodos () == null)
+      return ProbeResult.noMatch ("Prodos: no volume directory");
+
+    String reason = "Prodos: no catalog blocks";
+
+    for (int i = 0; i < 2; i++)
+      try
+      {
+        BlockReader prodosReader = new BlockReader (blockReader);
+        prodosReader.setParameters (i == 0 ? prodos1 : prodos2);
+
+        FsProdos fs = new FsProdos (prodosReader);
+
+        if (fs.getTotalCatalogBlocks () > 0)
+        {
+          if (debug)
+            System.out.println ("Adding Prodos");
+          return ProbeResult.match (fs);
+        }
+      }
+      catch (FileFormatException e)
+      {
+        if (debug)
+          System.out.println (e);
+
+        reason = e.toString ();
+      }
+
+    return ProbeResult.partial (reason);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probePascal (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (debug)
+      System.out.println ("Checking Pascal");
+
+    // should check for common HD sizes
+    if (blockReader.getDiskLength () < SECTOR_35_16_SIZE)
+      return ProbeResult.noMatch ("Pascal: disk length");
+
+    if (new FileSystemIdentifier (blockReader).pascal () == null)
+      return ProbeResult.noMatch ("Pascal: no volume header");
+
+    String reason = "Pascal: no catalog blocks";
+
+    for (int i = 0; i < 2; i++)
+      try
+      {
+        if (debug)
+          System.out.printf ("Pascal attempt %d%n", i);
+        BlockReader pascalReader = new BlockReader (blockReader);
+        pascalReader.setParameters (i == 0 ? prodos1 : prodos2);
+
+        FsPascal fs = new FsPascal (pascalReader);
+
+        if (fs.getTotalCatalogBlocks () > 0)
+        {
+          if (debug)
+            System.out.println ("Adding Pascal");
+          return ProbeResult.match (fs);
+        }
+      }
+      catch (FileFormatException e)
+      {
+        if (debug)
+          System.out.println (e);
+
+        reason = e.toString ();
+      }
+
+    return ProbeResult.partial (reason);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeCpm (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (debug)
+      System.out.println ("Checking CPM");
+
+    if (blockReader.getDiskLength () != SECTOR_35_16_SIZE)
+      return ProbeResult.noMatch ("CPM: disk length");
+
+    return probeCpm (blockReader, cpm, new FileSystemIdentifier (blockReader).cpm ());
+  }
+
+  // this is not fully working yet
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeCpm2 (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (blockReader.getDiskLength () != CPAM_SIZE)
+      return ProbeResult.noMatch ("CPM: disk length");
+
+    return probeCpm (blockReader, cpam, new FileSystemIdentifier (blockReader).cpm2 ());
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static ProbeResult probeCpm (BlockReader blockReader,
+      DiskParameters diskParameters, Match match)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (match == null)
+      return ProbeResult.noMatch ("CPM: invalid directory");
+
+    try
+    {
+      BlockReader cpmReader = new BlockReader (blockReader);
+      cpmReader.setParameters (diskParameters);
+
+      FsCpm fs = new FsCpm (cpmReader);
+
+      if (fs.getTotalCatalogBlocks () > 0)
+        return ProbeResult.match (fs);
+    }
+    catch (FileFormatException e)
+    {
+      if (debug)
+        System.out.println (e);
+
+      return ProbeResult.partial (e.toString ());
+    }
+
+    return ProbeResult.partial ("CPM: no catalog blocks");
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeLbr (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (debug)
+      System.out.println ("Checking LBR");
+
+    if (new FileSystemIdentifier (blockReader).lbr () == null)
+      return ProbeResult.noMatch ("LBR: invalid header");
+
+    try
+    {
+      BlockReader lbrReader = new BlockReader (blockReader);
+      lbrReader.setParameters (bin);
+
+      FsLbr fs = new FsLbr (lbrReader);
+
+      if (fs.getTotalCatalogBlocks () > 0)
+        return ProbeResult.match (fs);
+    }
+    catch (FileFormatException e)
+    {
+      if (debug)
+        System.out.println (e);
+
+      return ProbeResult.partial (e.toString ());
+    }
+
+    return ProbeResult.partial ("LBR: no catalog blocks");
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeBinary2 (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (debug)
+      System.out.println ("Checking BIN2");
+
+    if (!blockReader.isMagic (0, FsBinary2.BIN2) || !blockReader.byteAt (18, (byte) 0x02))
+      return ProbeResult.noMatch ("BIN2: magic");
+
+    try
+    {
+      BlockReader lbrReader = new BlockReader (blockReader);
+      lbrReader.setParameters (bin);
+
+      if (debug)
+        System.out.println ("Bin2 magic OK");
+
+      FsBinary2 fs = new FsBinary2 (lbrReader);
+
+      if (fs.getFileSystems ().size () > 0 || fs.getFiles ().size () > 0)
+      {
+        if (debug)
+          System.out.println ("Adding Bin2");
+        return ProbeResult.match (fs);
+      }
+    }
+    catch (FileFormatException e)
+    {
+      if (debug)
+        System.out.println (e);
+
+      return ProbeResult.partial (e.toString ());
+    }
+
+    return ProbeResult.partial ("BIN2: no files");
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeNuFx (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (debug)
+      System.out.println ("Checking NuFX");
+
+    if (!blockReader.isMagic (0, FsNuFX.NuFile))
+      return ProbeResult.noMatch ("NuFX: magic");
+
+    try
+    {
+      BlockReader nufxReader = new BlockReader (blockReader);
+      nufxReader.setParameters (bin);
+
+      FsNuFX fs = new FsNuFX (nufxReader);
+
+      if (fs.getFileSystems ().size () > 0 || fs.getFiles ().size () > 0)
+      {
+        if (debug)
+          System.out.println ("Adding NuFX");
+        return ProbeResult.match (fs);
+      }
+    }
+    catch (FileFormatException e)
+    {
+      if (debug)
+        System.out.println (e);
+
+      return ProbeResult.partial (e.toString ());
+    }
+
+    return ProbeResult.partial ("NuFX: no files");
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeZip (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (!blockReader.isMagic (0, FsZip.ZIP))
+      return ProbeResult.noMatch ("Zip: magic");
+
+    try
+    {
+      BlockReader lbrReader = new BlockReader (blockReader);
+      lbrReader.setParameters (bin);
+
+      FsZip fs = new FsZip (lbrReader);
+
+      if (fs.getFiles ().size () > 0 || fs.getFileSystems ().size () > 0)
+        return ProbeResult.match (fs);
+    }
+    catch (FileFormatException e)
+    {
+      if (debug)
+        System.out.println (e);
+
+      return ProbeResult.partial (e.toString ());
+    }
+
+    return ProbeResult.partial ("Zip: no files");
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeGZip (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (!blockReader.isMagic (0, FsGzip.GZIP))
+      return ProbeResult.noMatch ("GZip: magic");
+
+    try
+    {
+      BlockReader lbrReader = new BlockReader (blockReader);
+      lbrReader.setParameters (bin);
+
+      FsGzip fs = new FsGzip (lbrReader);
+
+      if (fs.getFiles ().size () > 0 || fs.getFileSystems ().size () > 0)
+        return ProbeResult.match (fs);
+    }
+    catch (FileFormatException e)
+    {
+      if (debug)
+        System.out.println (e);
+
+      return ProbeResult.partial (e.toString ());
+    }
+
+    return ProbeResult.partial ("GZip: no files");
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static ProbeResult probeWoz (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    FileSystemType fileSystemType =
+        blockReader.isMagic (0, FsWoz.WOZ_1)
+            ? FileSystemType.WOZ1
+            : blockReader.isMagic (0, FsWoz.WOZ_2)
+                ? FileSystemType.WOZ2 : null;
+
+    if (fileSystemType == null)
+      return ProbeResult.noMatch ("Woz: magic");
+
+    try
+    {
+      BlockReader lbrReader = new BlockReader (blockReader);
+      lbrReader.setParameters (bin);
+
+      FsWoz fs = new FsWoz (lbrReader, fileSystemType);
+
+      if (fs.getFileSystems ().size () > 0 || fs.getFiles ().size () > 0)
+        return ProbeResult.match (fs);
+    }
+    catch (Exception e)               // the nibble decoding can fail in many ways
+    {
+      if (debug)
+        System.out.println (e);
+
+      return ProbeResult.partial (e.toString ());
+    }
+
+    return ProbeResult.partial ("Woz: no files");
+  }
+
+  //  search/1/t  FiLeStArTfIlEsTaRt  binscii (apple ][) text
+  //  string    \x0aGL            Binary II (apple ][) data
+  //  string    \x76\xff          Squeezed (apple ][) data
+  //  string    NuFile            NuFile archive (apple ][) data
+  //  string    N\xf5F\xe9l\xe5   NuFile archive (apple ][) data
+  //  belong    0x00051600        AppleSingle encoded Macintosh file
+  //  belong    0x00051607        AppleDouble encoded Macintosh file
+}
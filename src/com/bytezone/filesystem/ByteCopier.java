@@ -1,5 +1,7 @@
 package com.bytezone.filesystem;
 
+import java.nio.ByteBuffer;
+
 // -----------------------------------------------------------------------------------//
 public interface ByteCopier
 // -----------------------------------------------------------------------------------//
@@ -18,4 +20,16 @@ public interface ByteCopier
   void read (AppleBlock block, byte[] blockBuffer, int bufferOffset);
 
   void write (AppleBlock block);
+
+  // a read-only slice of the disk, or null if the block is not stored contiguously
+  ByteBuffer view (AppleBlock block);
+
+  // the offset of the block in the disk, or -1 if it is not stored contiguously
+  int getDiskOffset (AppleBlock block);
+
+  // Blocks are made up of pieces (whole blocks or interleaved sectors), each of which
+  // is contiguous on the disk. Used to find runs of pieces that can be copied at once.
+  int getPieceSize ();
+
+  int getDiskOffset (AppleBlock block, int pieceNo);
 }
@@ -0,0 +1,263 @@
+package com.bytezone.filesystem;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import com.bytezone.filesystem.FileSystemWalker.Kind;
+import com.bytezone.filesystem.FileSystemWalker.Node;
+
+// -----------------------------------------------------------------------------------//
+// Writes the catalog of a file system as one record per file system, folder, file and
+// fork, either as JSON Lines or as CSV. Each record is written as soon as its entry is
+// visited, so nothing is kept in memory. Only the catalog information is used, no file
+// is ever read. Embedded file systems are left out unless setEmbedded (true) is
+// called, as opening one means reading (and often decompressing) the file holding it.
+// -----------------------------------------------------------------------------------//
+public class CatalogExporter
+// -----------------------------------------------------------------------------------//
+{
+  private static final String[] COLUMNS = { "image", "kind", "path", "depth",
+      "fileSystem", "fileType", "fileTypeText", "auxType", "length", "blocks", "locked",
+      "created", "modified", "error" };
+
+  private final Format format;
+  private final FileSystemWalker walker = new FileSystemWalker ();
+
+  public enum Format
+  {
+    JSON_LINES, CSV
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public CatalogExporter (Format format)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.format = format;
+    walker.setEmbedded (false);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public void setEmbedded (boolean embedded)
+  // ---------------------------------------------------------------------------------//
+  {
+    walker.setEmbedded (embedded);
+  }
+
+  // The CSV column names, call this once before the first export. Does nothing for
+  // JSON Lines.
+  // ---------------------------------------------------------------------------------//
+  public void writeHeader (Appendable out) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    if (format == Format.CSV)
+      out.append (String.join (",", COLUMNS)).append ('\n');
+  }
+
+  // The image name in each record is the file system's own name
+  // ---------------------------------------------------------------------------------//
+  public void export (AppleFileSystem fileSystem, OutputStream out) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    Writer writer =
+        new BufferedWriter (new OutputStreamWriter (out, StandardCharsets.UTF_8));
+    export (fileSystem.getFileName (), fileSystem, writer);
+    writer.flush ();                  // the caller owns the stream
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public void export (String image, AppleFileSystem fileSystem, Appendable out)
+      throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    try
+    {
+      walker.walk (fileSystem, node -> write (image, node, out));
+    }
+    catch (UncheckedIOException e)
+    {
+      throw e.getCause ();
+    }
+  }
+
+  // Exports every image under the folder. Each image's records are built on its own
+  // thread and then written to out in one piece, so the records of different images
+  // are never mixed together. An image that could not be opened has a single record
+  // with its error message.
+  // ---------------------------------------------------------------------------------//
+  public CatalogProgress export (Path folder, Cataloguer cataloguer, Appendable out)
+      throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    try
+    {
+      return cataloguer.catalog (folder, this::getRecords, records ->
+      {
+        try
+        {
+          out.append (records);
+        }
+        catch (IOException e)
+        {
+          throw new UncheckedIOException (e);
+        }
+      });
+    }
+    catch (UncheckedIOException e)
+    {
+      throw e.getCause ();
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private String getRecords (Cataloguer.Result result)
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+    String image = result.path ().toString ();
+
+    try
+    {
+      if (result.failed ())
+        writeRecord (text, new Object[] { image, Kind.FILE_SYSTEM, "", 0, null, null,
+            null, null, null, null, null, null, null, result.errorMessage () });
+      else
+        export (image, result.fileSystem (), text);
+    }
+    catch (IOException e)                 // a StringBuilder never throws
+    {
+      throw new UncheckedIOException (e);
+    }
+
+    return text.toString ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void write (String image, Node node, Appendable out)
+  // ---------------------------------------------------------------------------------//
+  {
+    try
+    {
+      writeRecord (out, getValues (image, node));
+    }
+    catch (IOException e)
+    {
+      throw new UncheckedIOException (e);
+    }
+  }
+
+  // in the same order as COLUMNS
+  // ---------------------------------------------------------------------------------//
+  private Object[] getValues (String image, Node node)
+  // ---------------------------------------------------------------------------------//
+  {
+    AppleFileSystem fs = node.fileSystem ();
+    String fsType = fs.getFileSystemType ().toString ();
+
+    if (node.kind () == Kind.FILE_SYSTEM)
+    {
+      String error = fs.getErrorMessage ();
+      return new Object[] { image, node.kind (), node.path (), node.depth (), fsType,
+          null, null, null, fs.getTotalBlocks () * fs.getBlockSize (),
+          fs.getTotalBlocks (), null, null, null,
+          error == null || error.isEmpty () ? null : error };
+    }
+
+    AppleFile file = node.file ();
+    String error = file.getErrorMessage ();
+
+    return new Object[] { image, node.kind (), node.path (), node.depth (), fsType,
+        file.getFileType (), file.getFileTypeText (), FileSystemWalker.getAuxType (file),
+        file.getFileLength (), file.getTotalBlocks (), file.isLocked (),
+        FileSystemWalker.getCreated (file), FileSystemWalker.getModified (file),
+        error == null || error.isEmpty () ? null : error };
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void writeRecord (Appendable out, Object[] values) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    if (format == Format.JSON_LINES)
+      out.append ('{');
+
+    for (int i = 0; i < values.length; i++)
+    {
+      if (i > 0)
+        out.append (',');
+
+      if (format == Format.JSON_LINES)
+      {
+        appendJson (out, COLUMNS[i]);
+        out.append (':');
+        appendJson (out, values[i]);
+      }
+      else
+        appendCsv (out, values[i]);
+    }
+
+    if (format == Format.JSON_LINES)
+      out.append ('}');
+
+    out.append ('\n');
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void appendJson (Appendable out, Object value) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    if (value == null)
+    {
+      out.append ("null");
+      return;
+    }
+
+    if (value instanceof Number || value instanceof Boolean)
+    {
+      out.append (value.toString ());
+      return;
+    }
+
+    out.append ('"');
+
+    for (char c : value.toString ().toCharArray ())
+      switch (c)
+      {
+        case '"' -> out.append ("\\\"");
+        case '\\' -> out.append ("\\\\");
+        case '\n' -> out.append ("\\n");
+        case '\r' -> out.append ("\\r");
+        case '\t' -> out.append ("\\t");
+        default ->
+        {
+          if (c < 0x20)
+            out.append (String.format ("\\u%04x", (int) c));
+          else
+            out.append (c);
+        }
+      }
+
+    out.append ('"');
+  }
+
+  // RFC 4180: quoted only if required, with quotes doubled
+  // ---------------------------------------------------------------------------------//
+  private void appendCsv (Appendable out, Object value) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    if (value == null)
+      return;
+
+    String text = value.toString ();
+
+    if (text.indexOf (',') < 0 && text.indexOf ('"') < 0 && text.indexOf ('\n') < 0
+        && text.indexOf ('\r') < 0)
+      out.append (text);
+    else
+      out.append ('"').append (text.replace ("\"", "\"\"")).append ('"');
+  }
+}
@@ -0,0 +1,194 @@
+package com.bytezone.filesystem;
+
+import static com.bytezone.utility.Utility.formatText;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.bytezone.filesystem.AppleFileSystem.FileSystemType;
+import com.bytezone.filesystem.Cataloguer.Result;
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// Live counters for a Cataloguer run. Everything can be read from any thread while the
+// run is still going. An image counts as failed when opening it threw an exception,
+// and as unreadable when it opened but has an error message (eg a damaged catalog).
+// Both are also counted against the image's file suffix.
+// -----------------------------------------------------------------------------------//
+public class CatalogProgress
+// -----------------------------------------------------------------------------------//
+{
+  private final long startTime = System.nanoTime ();
+  private volatile long endTime;                  // 0 while still running
+
+  private final AtomicLong found = new AtomicLong ();
+  private final AtomicLong completed = new AtomicLong ();
+  private final AtomicLong failed = new AtomicLong ();
+  private final AtomicLong unreadable = new AtomicLong ();
+  private final AtomicLong totalBytes = new AtomicLong ();
+
+  private final Map<FileSystemType, LongAdder> types = new ConcurrentHashMap<> ();
+  private final Map<String, LongAdder> errors = new ConcurrentHashMap<> ();
+
+  // ---------------------------------------------------------------------------------//
+  void found ()
+  // ---------------------------------------------------------------------------------//
+  {
+    found.incrementAndGet ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  void completed (Result result)
+  // ---------------------------------------------------------------------------------//
+  {
+    totalBytes.addAndGet (result.length ());
+
+    if (result.failed ())
+      failed.incrementAndGet ();
+    else
+    {
+      types.computeIfAbsent (result.fileSystemType (), k -> new LongAdder ())
+          .increment ();
+
+      if (!result.errorMessage ().isEmpty ())
+        unreadable.incrementAndGet ();
+    }
+
+    if (!result.errorMessage ().isEmpty ())
+      errors.computeIfAbsent (Utility.getSuffix (result.path ().toString ()),
+          k -> new LongAdder ()).increment ();
+
+    completed.incrementAndGet ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  void finish ()
+  // ---------------------------------------------------------------------------------//
+  {
+    endTime = System.nanoTime ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public boolean isFinished ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return endTime != 0;
+  }
+
+  // the images found so far, the walk may not have finished yet
+  // ---------------------------------------------------------------------------------//
+  public long getFound ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return found.get ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public long getCompleted ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return completed.get ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public long getFailed ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return failed.get ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public long getUnreadable ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return unreadable.get ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public long getTotalBytes ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return totalBytes.get ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public Duration getElapsed ()
+  // ---------------------------------------------------------------------------------//
+  {
+    long end = endTime;
+    return Duration.ofNanos ((end == 0 ? System.nanoTime () : end) - startTime);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public double getImagesPerSecond ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return perSecond (completed.get ());
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public double getBytesPerSecond ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return perSecond (totalBytes.get ());
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private double perSecond (long value)
+  // ---------------------------------------------------------------------------------//
+  {
+    long nanos = getElapsed ().toNanos ();
+    return nanos == 0 ? 0 : value * 1_000_000_000.0 / nanos;
+  }
+
+  // how many images of each type were opened
+  // ---------------------------------------------------------------------------------//
+  public Map<FileSystemType, Long> getTypeCounts ()
+  // ---------------------------------------------------------------------------------//
+  {
+    Map<FileSystemType, Long> counts = new TreeMap<> ();
+    types.forEach ((type, count) -> counts.put (type, count.sum ()));
+
+    return counts;
+  }
+
+  // how many failed or unreadable images there were for each file suffix
+  // ---------------------------------------------------------------------------------//
+  public Map<String, Long> getErrorCounts ()
+  // ---------------------------------------------------------------------------------//
+  {
+    Map<String, Long> counts = new TreeMap<> ();
+    errors.forEach ((suffix, count) -> counts.put (suffix, count.sum ()));
+
+    return counts;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public String toString ()
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+
+    formatText (text, "Found", 8, (int) getFound ());
+    formatText (text, "Completed", 8, (int) getCompleted ());
+    formatText (text, "Failed", 8, (int) getFailed ());
+    formatText (text, "Unreadable", 8, (int) getUnreadable ());
+    formatText (text, "Elapsed", String.format ("%,d ms", getElapsed ().toMillis ()));
+    formatText (text, "Images/sec", String.format ("%,.1f", getImagesPerSecond ()));
+    formatText (text, "MB/sec",
+        String.format ("%,.1f", getBytesPerSecond () / (1024 * 1024)));
+
+    for (Map.Entry<FileSystemType, Long> entry : getTypeCounts ().entrySet ())
+      formatText (text, "Type " + entry.getKey (), 8, entry.getValue ().intValue ());
+
+    for (Map.Entry<String, Long> entry : getErrorCounts ().entrySet ())
+      formatText (text, "Errors ." + entry.getKey (), 8, entry.getValue ().intValue ());
+
+    return Utility.rtrim (text);
+  }
+}
@@ -0,0 +1,220 @@
+package com.bytezone.filesystem;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.bytezone.filesystem.AppleFileSystem.FileSystemType;
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// Opens every disk image in a folder tree, several at a time. Each image is opened on
+// a virtual thread with its own FileSystemFactory, and at most `parallelism` of them
+// are open at once. Only files with one of Utility.getSuffixes() are opened. Results
+// are passed to the sink as each image finishes, so they arrive in no particular
+// order. The sink is only called by one thread at a time. The factories all share one
+// ProbeRegistry, so the probes are soon tried in the best order for the collection.
+// Nothing else may be shared between the images: every decoder (eg LZW, the WOZ disk
+// readers) must keep its working tables in its own instance, not in static fields.
+// -----------------------------------------------------------------------------------//
+public class Cataloguer
+// -----------------------------------------------------------------------------------//
+{
+  private final int parallelism;
+  private final ProbeRegistry probeRegistry = new ProbeRegistry ();
+  private Consumer<FileSystemFactory> factorySetup = factory -> {};
+  private Predicate<Path> imageFilter = path -> true;
+  private volatile CatalogProgress progress = new CatalogProgress ();
+
+  // ---------------------------------------------------------------------------------//
+  public record Result (Path path, long length, AppleFileSystem fileSystem,
+      String errorMessage, long nanos)
+  // ---------------------------------------------------------------------------------//
+  {
+    // opening the image threw an exception, the error message says what it was
+    // ---------------------------------------------------------------------------------//
+    public boolean failed ()
+    // ---------------------------------------------------------------------------------//
+    {
+      return fileSystem == null;
+    }
+
+    // ---------------------------------------------------------------------------------//
+    public FileSystemType fileSystemType ()
+    // ---------------------------------------------------------------------------------//
+    {
+      return fileSystem == null ? null : fileSystem.getFileSystemType ();
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public Cataloguer (int parallelism)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (parallelism < 1)
+      throw new IllegalArgumentException ("Parallelism must be at least 1");
+
+    this.parallelism = parallelism;
+  }
+
+  // Called with each new factory before it opens its image (eg to set a block cache
+  // size, a detection cache or a new ExpansionBudget)
+  // ---------------------------------------------------------------------------------//
+  public void setFactorySetup (Consumer<FileSystemFactory> factorySetup)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.factorySetup = factorySetup;
+  }
+
+  // Only the images the filter accepts are opened (eg the ones that have changed since
+  // the last run). It is called by the thread walking the folders.
+  // ---------------------------------------------------------------------------------//
+  public void setImageFilter (Predicate<Path> imageFilter)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.imageFilter = imageFilter;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public ProbeRegistry getProbeRegistry ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return probeRegistry;
+  }
+
+  // of the current (or last) run
+  // ---------------------------------------------------------------------------------//
+  public CatalogProgress getProgress ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return progress;
+  }
+
+  // Returns when every image has been opened and passed to the sink. Folders that
+  // cannot be read are skipped.
+  // ---------------------------------------------------------------------------------//
+  public CatalogProgress catalog (Path folder, Consumer<Result> sink) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    return catalog (folder, result -> result, sink);
+  }
+
+  // The worker is called on the image's own thread as soon as it is open (eg to walk
+  // its files), and only the worker's answer is passed to the sink. A null answer is
+  // not passed on.
+  // ---------------------------------------------------------------------------------//
+  public <T> CatalogProgress catalog (Path folder, Function<Result, T> worker,
+      Consumer<T> sink) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    CatalogProgress progress = new CatalogProgress ();
+    this.progress = progress;
+
+    Semaphore permits = new Semaphore (parallelism);
+    Object sinkLock = new Object ();
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor ())
+    {
+      Files.walkFileTree (folder, new SimpleFileVisitor<Path> ()
+      {
+        @Override
+        public FileVisitResult visitFile (Path path, BasicFileAttributes attributes)
+        {
+          if (!attributes.isRegularFile () || !isImage (path) || !imageFilter.test (path))
+            return FileVisitResult.CONTINUE;
+
+          try
+          {
+            permits.acquire ();         // keeps the walk just ahead of the workers
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread ().interrupt ();
+            return FileVisitResult.TERMINATE;
+          }
+
+          progress.found ();
+
+          executor.execute (() ->
+          {
+            try
+            {
+              Result result = open (path, attributes.size ());
+              progress.completed (result);
+
+              T answer = worker.apply (result);
+              if (answer != null)
+                synchronized (sinkLock)
+                {
+                  sink.accept (answer);
+                }
+            }
+            catch (RuntimeException e)        // from the worker or the sink
+            {
+              e.printStackTrace ();
+            }
+            finally
+            {
+              permits.release ();
+            }
+          });
+
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed (Path path, IOException e)
+        {
+          System.out.printf ("Skipping %s: %s%n", path, e);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }                                   // waits for the last images to finish
+    finally
+    {
+      progress.finish ();
+    }
+
+    return progress;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private boolean isImage (Path path)
+  // ---------------------------------------------------------------------------------//
+  {
+    String fileName = path.getFileName ().toString ();
+    return !fileName.startsWith (".") && Utility.getSuffixNo (fileName) >= 0;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private Result open (Path path, long length)
+  // ---------------------------------------------------------------------------------//
+  {
+    long start = System.nanoTime ();
+
+    try
+    {
+      FileSystemFactory factory = new FileSystemFactory ();
+      factory.setProbeRegistry (probeRegistry);
+      factorySetup.accept (factory);
+
+      AppleFileSystem fs = factory.getFileSystem (path);
+
+      return new Result (path, length, fs, fs.getErrorMessage (),
+          System.nanoTime () - start);
+    }
+    catch (RuntimeException e)
+    {
+      return new Result (path, length, null, e.toString (), System.nanoTime () - start);
+    }
+  }
+}
@@ -0,0 +1,368 @@
+package com.bytezone.filesystem;
+
+import static com.bytezone.utility.Utility.formatText;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import com.bytezone.filesystem.FileSystemWalker.Kind;
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// Finds the files (and optionally the blocks) that appear more than once in a
+// collection of images. Every file and fork, including those inside embedded disks
+// and archives, is identified by the SHA-256 of its contents, so two files are only
+// treated as the same when their bytes are identical. The contents are the same bytes
+// the Extractor would write.
+//
+// Blocks are hashed for every file system that has its own disk, including embedded
+// ones, but not for the components of a hybrid disk (they share their parent's blocks).
+// Only the first 16 bytes of each block's hash are kept, as a pair of longs, so that a
+// large collection's block counts fit in memory.
+//
+// If a store folder is set, the contents of each distinct file are also written there
+// once, named by their hash (eg store/3f/3fa4...), so that a collection can be kept as
+// its catalogs plus the store. contains() says whether some contents have been seen
+// before, so that they don't need to be processed again.
+// -----------------------------------------------------------------------------------//
+public class Deduplicator
+// -----------------------------------------------------------------------------------//
+{
+  private static final HexFormat hex = HexFormat.of ();
+
+  private final boolean hashBlocks;
+  private Path store;
+
+  private final Map<String, DuplicateSet> files = new HashMap<> ();
+  private final Map<BlockKey, Integer> blocks = new HashMap<> ();
+  private long totalFiles;
+  private long totalFileBytes;
+  private long totalBlocks;
+  private long totalBlockBytes;
+
+  // ---------------------------------------------------------------------------------//
+  public record Location (Path image, String path)
+  // ---------------------------------------------------------------------------------//
+  {
+  }
+
+  // every copy of one file's contents
+  // ---------------------------------------------------------------------------------//
+  public record DuplicateSet (String hash, int length, List<Location> copies)
+  // ---------------------------------------------------------------------------------//
+  {
+    // the bytes that would be saved by keeping only one copy
+    // ---------------------------------------------------------------------------------//
+    public long getWastedBytes ()
+    // ---------------------------------------------------------------------------------//
+    {
+      return (long) length * (copies.size () - 1);
+    }
+  }
+
+  // the first 128 bits of a block's SHA-256
+  // ---------------------------------------------------------------------------------//
+  private record BlockKey (long high, long low)
+  // ---------------------------------------------------------------------------------//
+  {
+  }
+
+  // what one image contributes, built on the image's own thread (blockBytes is a
+  // single total, in an array so that the walker can add to it)
+  // ---------------------------------------------------------------------------------//
+  private record Contents (List<String> hashes, List<Integer> lengths,
+      List<Location> locations, List<BlockKey> blockHashes, long[] blockBytes)
+  // ---------------------------------------------------------------------------------//
+  {
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public Deduplicator (boolean hashBlocks)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.hashBlocks = hashBlocks;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public void setStore (Path store)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.store = store;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public static String getHash (Buffer buffer)
+  // ---------------------------------------------------------------------------------//
+  {
+    MessageDigest digest = getDigest ();
+    digest.update (buffer.data (), buffer.offset (), buffer.length ());
+
+    return hex.formatHex (digest.digest ());
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static MessageDigest getDigest ()
+  // ---------------------------------------------------------------------------------//
+  {
+    try
+    {
+      return MessageDigest.getInstance ("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e)          // every JVM has SHA-256
+    {
+      throw new IllegalStateException (e);
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized boolean contains (String hash)
+  // ---------------------------------------------------------------------------------//
+  {
+    return files.containsKey (hash);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public void add (Path image, AppleFileSystem fileSystem)
+  // ---------------------------------------------------------------------------------//
+  {
+    merge (getContents (image, fileSystem));
+  }
+
+  // Adds every image under the folder, several at a time
+  // ---------------------------------------------------------------------------------//
+  public CatalogProgress add (Path folder, Cataloguer cataloguer) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    return cataloguer.catalog (folder, result -> result.failed () ? null
+        : getContents (result.path (), result.fileSystem ()), this::merge);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private Contents getContents (Path image, AppleFileSystem fileSystem)
+  // ---------------------------------------------------------------------------------//
+  {
+    Contents contents = new Contents (new ArrayList<> (), new ArrayList<> (),
+        new ArrayList<> (), new ArrayList<> (), new long[1]);
+
+    new FileSystemWalker ().walk (fileSystem, node ->
+    {
+      if (node.kind () == Kind.FILE_SYSTEM)
+      {
+        if (hashBlocks && !node.fileSystem ().isHybridComponent ())
+          addBlocks (contents, node.fileSystem ());
+        return;
+      }
+
+      if (node.kind () != Kind.FILE && node.kind () != Kind.FORK
+          || node.file ().isForkedFile ())
+        return;
+
+      AppleFile file = node.file ();
+
+      try
+      {
+        Buffer buffer = FileSystemWalker.getContents (file);
+        if (buffer == null)
+          return;
+
+        String hash = getHash (buffer);
+        if (store != null)
+          save (hash, buffer);
+
+        contents.hashes.add (hash);
+        contents.lengths.add (buffer.length ());
+        contents.locations.add (new Location (image, node.path ()));
+      }
+      catch (RuntimeException e)                  // the file can't be read
+      {
+        System.out.printf ("Skipping %s %s: %s%n", image, node.path (), e);
+      }
+
+      if (file instanceof AbstractAppleFile appleFile && !file.hasEmbeddedFileSystem ())
+        appleFile.releaseFileBuffers ();
+    });
+
+    return contents;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void addBlocks (Contents contents, AppleFileSystem fileSystem)
+  // ---------------------------------------------------------------------------------//
+  {
+    MessageDigest digest = getDigest ();
+
+    for (int blockNo = 0; blockNo < fileSystem.getTotalBlocks (); blockNo++)
+    {
+      ByteBuffer hash = ByteBuffer.wrap (
+          digest.digest (fileSystem.readBlock (fileSystem.getBlock (blockNo))));
+      contents.blockHashes.add (new BlockKey (hash.getLong (0), hash.getLong (8)));
+    }
+
+    contents.blockBytes[0] +=
+        (long) fileSystem.getTotalBlocks () * fileSystem.getBlockSize ();
+  }
+
+  // Another thread may be saving the same contents, so each file is written under a
+  // temporary name and then moved into place, and the first one there wins.
+  // ---------------------------------------------------------------------------------//
+  private void save (String hash, Buffer buffer)
+  // ---------------------------------------------------------------------------------//
+  {
+    Path path = store.resolve (hash.substring (0, 2)).resolve (hash);
+    if (Files.exists (path))
+      return;
+
+    try
+    {
+      Files.createDirectories (path.getParent ());
+      Path tempFile = Files.createTempFile (path.getParent (), hash, ".tmp");
+
+      Files.write (tempFile, buffer.exactData ());
+
+      try
+      {
+        Files.move (tempFile, path);
+      }
+      catch (FileAlreadyExistsException e)
+      {
+        Files.delete (tempFile);
+      }
+    }
+    catch (IOException e)
+    {
+      throw new UncheckedIOException (e);
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private synchronized void merge (Contents contents)
+  // ---------------------------------------------------------------------------------//
+  {
+    for (int i = 0; i < contents.hashes.size (); i++)
+    {
+      String hash = contents.hashes.get (i);
+      int length = contents.lengths.get (i);
+
+      files.computeIfAbsent (hash, k -> new DuplicateSet (k, length, new ArrayList<> ()))
+          .copies.add (contents.locations.get (i));
+
+      ++totalFiles;
+      totalFileBytes += length;
+    }
+
+    for (BlockKey blockKey : contents.blockHashes)
+      blocks.merge (blockKey, 1, Integer::sum);
+
+    totalBlocks += contents.blockHashes.size ();
+    totalBlockBytes += contents.blockBytes[0];
+  }
+
+  // Contents that appear more than once, the most wasteful first
+  // ---------------------------------------------------------------------------------//
+  public synchronized List<DuplicateSet> getDuplicates ()
+  // ---------------------------------------------------------------------------------//
+  {
+    List<DuplicateSet> duplicates = new ArrayList<> ();
+
+    for (DuplicateSet duplicateSet : files.values ())
+      if (duplicateSet.copies.size () > 1)
+        duplicates.add (new DuplicateSet (duplicateSet.hash, duplicateSet.length,
+            List.copyOf (duplicateSet.copies)));
+
+    duplicates.sort (Comparator.comparingLong (DuplicateSet::getWastedBytes).reversed ()
+        .thenComparing (DuplicateSet::hash));
+
+    return duplicates;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized long getTotalFiles ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return totalFiles;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized int getDistinctFiles ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return files.size ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized long getTotalFileBytes ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return totalFileBytes;
+  }
+
+  // what the store holds
+  // ---------------------------------------------------------------------------------//
+  public synchronized long getDistinctFileBytes ()
+  // ---------------------------------------------------------------------------------//
+  {
+    long bytes = 0;
+    for (DuplicateSet duplicateSet : files.values ())
+      bytes += duplicateSet.length;
+
+    return bytes;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized long getTotalBlocks ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return totalBlocks;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized int getDistinctBlocks ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return blocks.size ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public synchronized String toString ()
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+
+    formatText (text, "Files", String.format ("%,d", totalFiles));
+    formatText (text, "Distinct files", String.format ("%,d", files.size ()));
+    formatText (text, "File bytes", String.format ("%,d", totalFileBytes));
+    formatText (text, "Distinct file bytes",
+        String.format ("%,d", getDistinctFileBytes ()));
+
+    if (hashBlocks)
+    {
+      formatText (text, "Blocks", String.format ("%,d", totalBlocks));
+      formatText (text, "Distinct blocks", String.format ("%,d", blocks.size ()));
+      formatText (text, "Block bytes", String.format ("%,d", totalBlockBytes));
+    }
+
+    List<DuplicateSet> duplicates = getDuplicates ();
+    formatText (text, "Duplicate sets", String.format ("%,d", duplicates.size ()));
+
+    for (DuplicateSet duplicateSet : duplicates.subList (0,
+        Math.min (10, duplicates.size ())))
+      formatText (text, "  " + duplicateSet.copies.get (0).path (),
+          String.format ("%,d x %,d bytes", duplicateSet.copies.size (),
+              duplicateSet.length));
+
+    return Utility.rtrim (text);
+  }
+}
@@ -0,0 +1,223 @@
+package com.bytezone.filesystem;
+
+import static com.bytezone.utility.Utility.formatText;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.bytezone.filesystem.AppleFileSystem.FileSystemType;
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// Remembers which probes found a file system in each image file, so that opening the
+// same image again goes straight to those probes (see FileSystemFactory
+// .setDetectionCache()). An entry is keyed by the file's path and holds its length,
+// modified time and a hash of its contents. When the length and time still match the
+// entry is used as it is, when only the time differs the contents are hashed again.
+// Any other change discards the entry. The cache is kept in a text file with one tab
+// separated line per image.
+// -----------------------------------------------------------------------------------//
+public class DetectionCache
+// -----------------------------------------------------------------------------------//
+{
+  private final Path cacheFile;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<> ();
+
+  private long hits;
+  private long misses;
+
+  // ---------------------------------------------------------------------------------//
+  public record Detection (String probe, FileSystemType fileSystemType,
+      DiskParameters diskParameters)
+  // ---------------------------------------------------------------------------------//
+  {
+  }
+
+  // ---------------------------------------------------------------------------------//
+  record Entry (long length, long lastModified, long hash, List<Detection> detections)
+  // ---------------------------------------------------------------------------------//
+  {
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public DetectionCache (Path cacheFile)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.cacheFile = cacheFile;
+
+    if (Files.exists (cacheFile))
+      load ();
+  }
+
+  // The detections for the image if it has not changed since they were stored,
+  // otherwise null. The BlockReader is only hashed when the modified time differs.
+  // ---------------------------------------------------------------------------------//
+  synchronized List<Detection> get (Path path, BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    String key = getKey (path);
+    Entry entry = entries.get (key);
+
+    if (entry != null)
+    {
+      long length = path.toFile ().length ();
+      long lastModified = path.toFile ().lastModified ();
+
+      if (entry.length == length && entry.lastModified != lastModified
+          && entry.hash == blockReader.getContentHash ())
+      {
+        entry = new Entry (length, lastModified, entry.hash, entry.detections);
+        entries.put (key, entry);                         // touched but not changed
+      }
+
+      if (entry.length == length && entry.lastModified == lastModified)
+      {
+        ++hits;
+        return entry.detections;
+      }
+
+      entries.remove (key);
+    }
+
+    ++misses;
+    return null;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  synchronized void put (Path path, BlockReader blockReader, List<Detection> detections)
+  // ---------------------------------------------------------------------------------//
+  {
+    entries.put (getKey (path), new Entry (path.toFile ().length (),
+        path.toFile ().lastModified (), blockReader.getContentHash (),
+        List.copyOf (detections)));
+  }
+
+  // ---------------------------------------------------------------------------------//
+  synchronized void remove (Path path)
+  // ---------------------------------------------------------------------------------//
+  {
+    entries.remove (getKey (path));
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized void clear ()
+  // ---------------------------------------------------------------------------------//
+  {
+    entries.clear ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public int size ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return entries.size ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private String getKey (Path path)
+  // ---------------------------------------------------------------------------------//
+  {
+    return path.toAbsolutePath ().normalize ().toString ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void load ()
+  // ---------------------------------------------------------------------------------//
+  {
+    try (BufferedReader reader = Files.newBufferedReader (cacheFile))
+    {
+      String line;
+      while ((line = reader.readLine ()) != null)
+      {
+        String[] fields = line.split ("\t");
+        if (fields.length < 5)
+          continue;
+
+        try
+        {
+          List<Detection> detections = new ArrayList<> ();
+
+          for (int i = 4; i < fields.length; i++)
+          {
+            String[] parts = fields[i].split (",");
+            detections.add (new Detection (parts[0], FileSystemType.valueOf (parts[1]),
+                new DiskParameters (Integer.parseInt (parts[2]),
+                    Integer.parseInt (parts[3]), Integer.parseInt (parts[4]))));
+          }
+
+          entries.put (fields[0], new Entry (Long.parseLong (fields[1]),
+              Long.parseLong (fields[2]), Long.parseUnsignedLong (fields[3], 16),
+              detections));
+        }
+        catch (RuntimeException e)          // skip the line, it will be detected again
+        {
+          System.out.printf ("Ignoring cache entry: %s%n", fields[0]);
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace ();
+    }
+  }
+
+  // Written to a temporary file first so that a failed save never loses the cache
+  // ---------------------------------------------------------------------------------//
+  public synchronized void save ()
+  // ---------------------------------------------------------------------------------//
+  {
+    Path tempFile = cacheFile.resolveSibling (cacheFile.getFileName () + ".tmp");
+
+    try
+    {
+      try (BufferedWriter writer = Files.newBufferedWriter (tempFile))
+      {
+        for (Map.Entry<String, Entry> mapEntry : entries.entrySet ())
+        {
+          Entry entry = mapEntry.getValue ();
+          writer.write (String.format ("%s\t%d\t%d\t%X", mapEntry.getKey (),
+              entry.length, entry.lastModified, entry.hash));
+
+          for (Detection detection : entry.detections)
+          {
+            DiskParameters diskParameters = detection.diskParameters;
+            writer.write (String.format ("\t%s,%s,%d,%d,%d", detection.probe,
+                detection.fileSystemType, diskParameters.bytesPerBlock (),
+                diskParameters.interleave (), diskParameters.blocksPerTrack ()));
+          }
+
+          writer.newLine ();
+        }
+      }
+
+      Files.move (tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace ();
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public String toString ()
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+
+    formatText (text, "Cache file", cacheFile.toString ());
+    formatText (text, "Entries", 8, entries.size ());
+    formatText (text, "Hits", 8, (int) hits);
+    formatText (text, "Misses", 8, (int) misses);
+
+    return Utility.rtrim (text);
+  }
+}
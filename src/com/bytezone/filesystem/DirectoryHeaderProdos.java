@@ -80,9 +80,7 @@ class DirectoryHeaderProdos
     entriesPerBlock = buffer[0x24] & 0xFF;
     fileCount = Utility.unsignedShort (buffer, 0x25);
 
-    if (entryLength != ProdosConstants.ENTRY_SIZE
-        || entriesPerBlock != ProdosConstants.ENTRIES_PER_BLOCK)
-      throw new FileFormatException ("FsProdos: Invalid entry data");
+    checkEntrySize (buffer);
 
     // bitmap pointer for VOL, first directory block for DIR
     keyPtr = Utility.unsignedShort (buffer, 0x27);
@@ -101,6 +99,16 @@ class DirectoryHeaderProdos
     }
   }
 
+  // also used by FileSystemIdentifier
+  // ---------------------------------------------------------------------------------//
+  static void checkEntrySize (byte[] buffer)
+  // ---------------------------------------------------------------------------------//
+  {
+    if ((buffer[0x23] & 0xFF) != ProdosConstants.ENTRY_SIZE
+        || (buffer[0x24] & 0xFF) != ProdosConstants.ENTRIES_PER_BLOCK)
+      throw new FileFormatException ("FsProdos: Invalid entry data");
+  }
+
   // ---------------------------------------------------------------------------------//
   private void getCatalogBlocks (FsProdos fs, int nextBlockNo)
   // ---------------------------------------------------------------------------------//
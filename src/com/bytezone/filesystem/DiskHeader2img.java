@@ -9,6 +9,7 @@ public class DiskHeader2img extends DiskHeader
 // -----------------------------------------------------------------------------------//
 {
   static final byte[] TWO_IMG_MAGIC = { 0x32, 0x49, 0x4D, 0x47 };
+  private static final int HEADER_SIZE = 64;
   private static String[] twoIMGFormats = { "Dos", "Prodos", "NIB" };
   private static String[] creatorCodes =
       { "!nfc", "APSX", "B2TR", "CTKG", "CdrP", "CPII", "pdos", "SHEP", "ShIm", "WOOF",
@@ -43,30 +44,28 @@ public class DiskHeader2img extends DiskHeader
   {
     super (blockReader, DiskHeaderType.TWO_IMG);
 
-    Buffer diskBuffer = blockReader.getDiskBuffer ();
-    assert diskBuffer.isMagic (0, TWO_IMG_MAGIC);
+    assert blockReader.isMagic (0, TWO_IMG_MAGIC);
 
-    byte[] buffer = diskBuffer.data ();
-    int diskOffset = diskBuffer.offset ();
+    byte[] buffer = blockReader.readBytes (0, HEADER_SIZE);
 
-    creator = new String (buffer, diskOffset + 4, 4);
-    headerSize = Utility.unsignedShort (buffer, diskOffset + 8);
-    version = Utility.unsignedShort (buffer, diskOffset + 10);
-    format = Utility.unsignedInt (buffer, diskOffset + 12);
-    flags = Utility.unsignedInt (buffer, diskOffset + 16);
-    prodosBlocks = Utility.unsignedInt (buffer, diskOffset + 20);
+    creator = new String (buffer, 4, 4);
+    headerSize = Utility.unsignedShort (buffer, 8);
+    version = Utility.unsignedShort (buffer, 10);
+    format = Utility.unsignedInt (buffer, 12);
+    flags = Utility.unsignedInt (buffer, 16);
+    prodosBlocks = Utility.unsignedInt (buffer, 20);
 
-    offset = Utility.unsignedInt (buffer, diskOffset + 24);
-    originalLength = Utility.unsignedInt (buffer, diskOffset + 28);
+    offset = Utility.unsignedInt (buffer, 24);
+    originalLength = Utility.unsignedInt (buffer, 28);
 
     length = originalLength == 0 ? prodosBlocks * 512 : originalLength; // see Fantavision.2mg
 
-    commentOffset = Utility.unsignedInt (buffer, diskOffset + 32);
-    commentLength = Utility.unsignedInt (buffer, diskOffset + 36);
-    creatorDataOffset = Utility.unsignedInt (buffer, diskOffset + 40);
-    creatorDataLength = Utility.unsignedInt (buffer, diskOffset + 44);
+    commentOffset = Utility.unsignedInt (buffer, 32);
+    commentLength = Utility.unsignedInt (buffer, 36);
+    creatorDataOffset = Utility.unsignedInt (buffer, 40);
+    creatorDataLength = Utility.unsignedInt (buffer, 44);
     comment = commentOffset == 0 ? ""
-        : new String (buffer, diskOffset + commentOffset, commentLength);
+        : new String (blockReader.readBytes (commentOffset, commentLength));
 
     locked = (flags & 0x8000) != 0;
     hasDosVolumeNumber = (flags & 0x0100) != 0;
@@ -77,7 +76,7 @@ public class DiskHeader2img extends DiskHeader
   public static boolean isValid (BlockReader blockReader)
   // ---------------------------------------------------------------------------------//
   {
-    return Utility.isMagic (blockReader.getDiskBuffer (), 0, TWO_IMG_MAGIC);
+    return blockReader.isMagic (0, TWO_IMG_MAGIC);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -85,10 +84,7 @@ public class DiskHeader2img extends DiskHeader
   public BlockReader getBlockReader ()
   // ---------------------------------------------------------------------------------//
   {
-    Buffer diskBuffer = blockReader.getDiskBuffer ();
-
-    return new BlockReader (blockReader.getName (), diskBuffer.data (),
-        diskBuffer.offset () + offset, length);
+    return new BlockReader (blockReader, offset, length);
   }
 
   // ---------------------------------------------------------------------------------//
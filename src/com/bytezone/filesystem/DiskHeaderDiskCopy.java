@@ -2,6 +2,8 @@ package com.bytezone.filesystem;
 
 import static com.bytezone.utility.Utility.formatText;
 
+import java.io.IOException;
+
 import com.bytezone.utility.Utility;
 
 // https://www.discferret.com/wiki/Apple_DiskCopy_4.2
@@ -14,11 +16,12 @@ public class DiskHeaderDiskCopy extends DiskHeader
       { "GCR CLV 400K", "GCR CLV 800K", "MFM CAV 400K", "MFM CAV 800K" };
   private static byte[] diskCopySize400 = { 0x00, 0x06, 0x40, 0x00 };
   private static byte[] diskCopySize800 = { 0x00, 0x0C, (byte) 0x80, 0x00 };
+  private static final int HEADER_SIZE = 0x54;
 
   private final String name;
   private final int dataSize;
   private final int tagSize;
-  private final int dataChecksum;
+  private int dataChecksum;
   private final int tagChecksum;
   private final int diskFormat;
   private final int encoding;
@@ -30,9 +33,8 @@ public class DiskHeaderDiskCopy extends DiskHeader
   {
     super (blockReader, DiskHeaderType.DISK_COPY);
 
-    Buffer diskBuffer = blockReader.getDiskBuffer ();
-    byte[] buffer = diskBuffer.data ();
-    int ptr = diskBuffer.offset ();
+    byte[] buffer = blockReader.readBytes (0, HEADER_SIZE);
+    int ptr = 0;
 
     int nameLength = buffer[ptr] * 0xFF;
     if (nameLength < 1 || nameLength > 0x3F)
@@ -53,9 +55,8 @@ public class DiskHeaderDiskCopy extends DiskHeader
   public static boolean isValid (BlockReader blockReader)
   // ---------------------------------------------------------------------------------//
   {
-    byte[] buffer = blockReader.getDiskBuffer ().data ();
-    int ptr = blockReader.getDiskBuffer ().offset ();
-    int id = Utility.unsignedShortBigEndian (buffer, ptr + 0x52);
+    byte[] buffer = blockReader.readBytes (0, HEADER_SIZE);
+    int id = Utility.unsignedShortBigEndian (buffer, 0x52);
 
     return (Utility.isMagic (buffer, 0x40, diskCopySize800)
         || Utility.isMagic (buffer, 0x40, diskCopySize400)) && id == 0x100;
@@ -71,15 +72,51 @@ public class DiskHeaderDiskCopy extends DiskHeader
     return id;
   }
 
+  // Each big-endian word of the data is added to the checksum, which is then rotated
+  // right by one bit
+  // ---------------------------------------------------------------------------------//
+  static int getChecksum (BlockReader diskReader, int dataSize)
+  // ---------------------------------------------------------------------------------//
+  {
+    int checksum = 0;
+
+    for (int offset = 0; offset < dataSize; offset += 0x10000)
+    {
+      int length = Math.min (0x10000, dataSize - offset);
+      byte[] buffer = diskReader.readBytes (offset, length);
+
+      for (int ptr = 0; ptr + 1 < buffer.length; ptr += 2)
+      {
+        checksum += Utility.unsignedShortBigEndian (buffer, ptr);
+        checksum = Integer.rotateRight (checksum, 1);
+      }
+    }
+
+    return checksum;
+  }
+
+  // called after the disk has been saved, diskReader is the one from getBlockReader()
+  // ---------------------------------------------------------------------------------//
+  void saveChecksum (BlockReader diskReader, boolean force) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    int checksum = getChecksum (diskReader, dataSize);
+    if (checksum == dataChecksum)
+      return;
+
+    byte[] buffer = new byte[4];
+    Utility.writeIntBigEndian (buffer, 0, checksum);
+
+    blockReader.saveBytes (0x48, buffer, force);
+    dataChecksum = checksum;
+  }
+
   // ---------------------------------------------------------------------------------//
   @Override
   public BlockReader getBlockReader ()
   // ---------------------------------------------------------------------------------//
   {
-    Buffer diskBuffer = blockReader.getDiskBuffer ();
-
-    return new BlockReader (blockReader.getName (), diskBuffer.data (),
-        diskBuffer.offset () + 0x54, dataSize);
+    return new BlockReader (blockReader, HEADER_SIZE, dataSize);
   }
 
   // ---------------------------------------------------------------------------------//
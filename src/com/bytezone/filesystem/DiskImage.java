@@ -0,0 +1,371 @@
+package com.bytezone.filesystem;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+// -----------------------------------------------------------------------------------//
+// The bytes behind a BlockReader. This is either a heap Buffer, or a read-only mapping
+// of the image file which is only copied onto the heap when something asks for the
+// byte array (archives, getDiskBuffer() etc). Every BlockReader copied from the same
+// original shares the one DiskImage, so they all see the same bytes. When the bytes
+// came from a file, path and fileOffset say where the disk starts in that file.
+//
+// Bytes that belong to someone else (a mapped file, or the parent's buffer of an
+// embedded file system) are copy-on-write. A write copies only the pages it touches,
+// and reads look at those private pages first. The bytes themselves are never changed.
+// -----------------------------------------------------------------------------------//
+class DiskImage
+// -----------------------------------------------------------------------------------//
+{
+  private static final int PAGE_SIZE = 256;
+
+  private final int length;
+  private final Path path;                      // null if not read from a file
+  private final int fileOffset;                 // eg the size of a 2img header
+
+  private volatile Buffer diskBuffer;           // null while only mapped
+  private volatile ByteBuffer byteBuffer;       // index 0 is the first byte of the disk
+  private volatile boolean shared;              // writes go to private pages
+
+  private final Map<Integer, byte[]> pages = new ConcurrentHashMap<> ();
+
+  // ---------------------------------------------------------------------------------//
+  DiskImage (Buffer diskBuffer)
+  // ---------------------------------------------------------------------------------//
+  {
+    this (diskBuffer, null, 0, false);
+  }
+
+  // a shared buffer is never written to, see put()
+  // ---------------------------------------------------------------------------------//
+  DiskImage (Buffer diskBuffer, boolean shared)
+  // ---------------------------------------------------------------------------------//
+  {
+    this (diskBuffer, null, 0, shared);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  DiskImage (Buffer diskBuffer, Path path, int fileOffset)
+  // ---------------------------------------------------------------------------------//
+  {
+    this (diskBuffer, path, fileOffset, false);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private DiskImage (Buffer diskBuffer, Path path, int fileOffset, boolean shared)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.diskBuffer = Objects.requireNonNull (diskBuffer, "Buffer is null");
+    this.length = diskBuffer.length ();
+    this.path = path;
+    this.fileOffset = fileOffset;
+    this.shared = shared;
+
+    byteBuffer = wrap (diskBuffer);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  DiskImage (ByteBuffer mappedBuffer, int length, Path path, int fileOffset)
+  // ---------------------------------------------------------------------------------//
+  {
+    Objects.checkFromIndexSize (0, length, mappedBuffer.capacity ());
+
+    this.length = length;
+    this.path = path;
+    this.fileOffset = fileOffset;
+
+    byteBuffer = mappedBuffer.slice (0, length).asReadOnlyBuffer ();
+    shared = true;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static ByteBuffer wrap (Buffer buffer)
+  // ---------------------------------------------------------------------------------//
+  {
+    return ByteBuffer.wrap (buffer.data (), buffer.offset (), buffer.length ()).slice ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  int length ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return length;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  Path getPath ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return path;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  int getFileOffset ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return fileOffset;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  boolean isMapped ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskBuffer == null;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  boolean isShared ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return shared;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  int getTotalPrivatePages ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return pages.size ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  void get (int offset, byte[] buffer, int bufferOffset, int length)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (pages.isEmpty ())
+    {
+      byteBuffer.get (offset, buffer, bufferOffset, length);
+      return;
+    }
+
+    synchronized (this)
+    {
+      while (length > 0)
+      {
+        int pageOffset = offset % PAGE_SIZE;
+        int xfrBytes = Math.min (length, PAGE_SIZE - pageOffset);
+        byte[] page = pages.get (offset / PAGE_SIZE);
+
+        if (page == null)
+          byteBuffer.get (offset, buffer, bufferOffset, xfrBytes);
+        else
+          System.arraycopy (page, pageOffset, buffer, bufferOffset, xfrBytes);
+
+        offset += xfrBytes;
+        bufferOffset += xfrBytes;
+        length -= xfrBytes;
+      }
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  synchronized void put (int offset, byte[] buffer, int bufferOffset, int length)
+  // ---------------------------------------------------------------------------------//
+  {
+    Objects.checkFromIndexSize (offset, length, this.length);
+
+    if (!shared)
+    {
+      byteBuffer.put (offset, buffer, bufferOffset, length);
+      return;
+    }
+
+    while (length > 0)
+    {
+      int pageOffset = offset % PAGE_SIZE;
+      int xfrBytes = Math.min (length, PAGE_SIZE - pageOffset);
+      byte[] page = pages.computeIfAbsent (offset / PAGE_SIZE, this::copyPage);
+
+      System.arraycopy (buffer, bufferOffset, page, pageOffset, xfrBytes);
+
+      offset += xfrBytes;
+      bufferOffset += xfrBytes;
+      length -= xfrBytes;
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private byte[] copyPage (int pageNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    byte[] page = new byte[PAGE_SIZE];
+    int offset = pageNo * PAGE_SIZE;
+
+    byteBuffer.get (offset, page, 0, Math.min (PAGE_SIZE, length - offset));
+
+    return page;
+  }
+
+  // a read-only slice of the disk, or null if any of it has been copied to a page
+  // ---------------------------------------------------------------------------------//
+  ByteBuffer view (int offset, int length)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (offset < 0 || offset + length > this.length)
+      return null;
+
+    if (!pages.isEmpty ())
+      for (int pageNo = offset / PAGE_SIZE; pageNo <= (offset + length - 1) / PAGE_SIZE;
+          pageNo++)
+        if (pages.containsKey (pageNo))
+          return null;
+
+    return byteBuffer.slice (offset, length).asReadOnlyBuffer ();
+  }
+
+  // the whole disk, this will copy the bytes onto the heap if any pages are private
+  // ---------------------------------------------------------------------------------//
+  ByteBuffer getByteBuffer ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (!pages.isEmpty ())
+      getBuffer ();
+
+    return byteBuffer.asReadOnlyBuffer ();
+  }
+
+  // A mapped file, or a shared buffer with private pages, is copied onto the heap and
+  // from then on it is written to directly. A shared buffer without any private pages
+  // is returned as it is, and must only be read.
+  // ---------------------------------------------------------------------------------//
+  synchronized Buffer getBuffer ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (diskBuffer == null || !pages.isEmpty ())
+    {
+      byte[] buffer = new byte[length];
+      byteBuffer.get (0, buffer, 0, length);
+
+      for (Map.Entry<Integer, byte[]> entry : pages.entrySet ())
+      {
+        int offset = entry.getKey () * PAGE_SIZE;
+        System.arraycopy (entry.getValue (), 0, buffer, offset,
+            Math.min (PAGE_SIZE, length - offset));
+      }
+
+      diskBuffer = new Buffer (buffer, 0, length);
+      byteBuffer = wrap (diskBuffer);
+      shared = false;
+      pages.clear ();
+    }
+
+    return diskBuffer;
+  }
+
+  // A window onto part of this image (eg the disk inside a 2img file). Any private
+  // pages are merged first so that both images see the same bytes.
+  // ---------------------------------------------------------------------------------//
+  synchronized DiskImage slice (int offset, int length)
+  // ---------------------------------------------------------------------------------//
+  {
+    Objects.checkFromIndexSize (offset, length, this.length);
+
+    if (!pages.isEmpty ())
+      getBuffer ();
+
+    if (diskBuffer == null)
+      return new DiskImage (byteBuffer.slice (offset, length), length, path,
+          fileOffset + offset);
+
+    return new DiskImage (
+        new Buffer (diskBuffer.data (), diskBuffer.offset () + offset, length), path,
+        fileOffset + offset, shared);
+  }
+
+  // Set a bit for every piece of the disk that holds nothing but the fill byte. Eight
+  // bytes are compared at a time, any bytes past the end of the disk count as filled.
+  // ---------------------------------------------------------------------------------//
+  BitSet findFilled (int pieceSize, byte fill)
+  // ---------------------------------------------------------------------------------//
+  {
+    long pattern = (fill & 0xFFL) * 0x0101_0101_0101_0101L;
+    int totalPieces = (length - 1) / pieceSize + 1;
+    BitSet filled = new BitSet (totalPieces);
+
+    ByteBuffer buffer = byteBuffer;
+    boolean paged = !pages.isEmpty ();
+
+    for (int pieceNo = 0; pieceNo < totalPieces; pieceNo++)
+    {
+      int offset = pieceNo * pieceSize;
+      int max = Math.min (offset + pieceSize, length);
+
+      if (paged)
+        buffer = ByteBuffer.wrap (read (offset, max - offset));
+
+      int ptr = paged ? 0 : offset;
+      int end = paged ? max - offset : max;
+
+      while (ptr + 8 <= end && buffer.getLong (ptr) == pattern)
+        ptr += 8;
+      while (ptr < end && buffer.get (ptr) == fill)
+        ++ptr;
+
+      if (ptr == end)
+        filled.set (pieceNo);
+    }
+
+    return filled;
+  }
+
+  // CRC32C of every byte of the disk (including any private pages) and its length
+  // ---------------------------------------------------------------------------------//
+  long hash ()
+  // ---------------------------------------------------------------------------------//
+  {
+    CRC32C crc = new CRC32C ();
+    crc.update (getByteBuffer ());
+
+    return (long) length << 32 | crc.getValue ();
+  }
+
+  // copy without failing - any bytes beyond the end of the disk are left as zero
+  // ---------------------------------------------------------------------------------//
+  byte[] read (int offset, int length)
+  // ---------------------------------------------------------------------------------//
+  {
+    byte[] buffer = new byte[length];
+
+    int xfrBytes = Math.min (length, this.length - offset);
+    if (offset >= 0 && xfrBytes > 0)
+      get (offset, buffer, 0, xfrBytes);
+
+    return buffer;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  boolean isMagic (int offset, byte[] magic)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (offset < 0 || offset + magic.length >= length)     // same test as Utility
+      return false;
+
+    if (!pages.isEmpty ())
+      return Arrays.equals (read (offset, magic.length), magic);
+
+    ByteBuffer buffer = byteBuffer;
+    for (int i = 0; i < magic.length; i++)
+      if (buffer.get (offset + i) != magic[i])
+        return false;
+
+    return true;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  boolean byteAt (int offset, byte value)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (offset < 0 || offset >= length)
+      return false;
+
+    if (!pages.isEmpty ())
+      return read (offset, 1)[0] == value;
+
+    return byteBuffer.get (offset) == value;
+  }
+}
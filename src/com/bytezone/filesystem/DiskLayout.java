@@ -0,0 +1,133 @@
+package com.bytezone.filesystem;
+
+import static com.bytezone.utility.Utility.formatText;
+
+import java.nio.ByteBuffer;
+
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// The physical position of every logical 256-byte sector of a disk, worked out once
+// from the DiskParameters and shared by the ByteCopiers. A logical offset is where a
+// byte would be if the disk had no interleave (ie block n starts at n * bytesPerBlock),
+// so the interleave tables are only consulted here.
+// -----------------------------------------------------------------------------------//
+public class DiskLayout
+// -----------------------------------------------------------------------------------//
+{
+  private static final int SECTOR_SIZE = 256;
+
+  private final DiskParameters diskParameters;
+  private final int totalSectors;
+  private final int[] sectorOffsets;          // null when the disk has no interleave
+
+  // ---------------------------------------------------------------------------------//
+  DiskLayout (DiskParameters diskParameters, int diskLength)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.diskParameters = diskParameters;
+    totalSectors = (diskLength - 1) / SECTOR_SIZE + 1;
+
+    if (diskParameters.interleave () == 0)
+    {
+      sectorOffsets = null;
+      return;
+    }
+
+    int[] interleave = ByteCopier.interleaves[diskParameters.interleave ()];
+    int sectorsPerTrack =
+        diskParameters.bytesPerBlock () * diskParameters.blocksPerTrack () / SECTOR_SIZE;
+
+    sectorOffsets = new int[totalSectors];
+
+    for (int sector = 0; sector < totalSectors; sector++)
+    {
+      int trackStart = sector - sector % sectorsPerTrack;
+      sectorOffsets[sector] =
+          (trackStart + interleave[sector % sectorsPerTrack]) * SECTOR_SIZE;
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public DiskParameters getDiskParameters ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskParameters;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public int getTotalSectors ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return totalSectors;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public boolean isInterleaved ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return sectorOffsets != null;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public int getOffset (int logicalOffset)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (sectorOffsets == null)
+      return logicalOffset;
+
+    return sectorOffsets[logicalOffset >>> 8] + (logicalOffset & 0xFF);
+  }
+
+  // the physical offset if every byte in the range is stored in order, otherwise -1
+  // ---------------------------------------------------------------------------------//
+  public int getOffset (int logicalOffset, int length)
+  // ---------------------------------------------------------------------------------//
+  {
+    int offset = getOffset (logicalOffset);
+
+    if (sectorOffsets != null)
+    {
+      int firstSector = logicalOffset >>> 8;
+      int lastSector = (logicalOffset + length - 1) >>> 8;
+
+      for (int sector = firstSector + 1; sector <= lastSector; sector++)
+        if (sectorOffsets[sector] != sectorOffsets[sector - 1] + SECTOR_SIZE)
+          return -1;
+    }
+
+    return offset;
+  }
+
+  // Copy every sector from its position in this layout to its position in the target
+  // layout (eg to convert a disk from DOS order to Prodos order).
+  // ---------------------------------------------------------------------------------//
+  void remap (ByteBuffer source, DiskLayout target, byte[] buffer)
+  // ---------------------------------------------------------------------------------//
+  {
+    int length = Math.min (source.limit (), buffer.length);
+
+    for (int sector = 0; sector < totalSectors; sector++)
+    {
+      int from = getOffset (sector * SECTOR_SIZE);
+      int to = target.getOffset (sector * SECTOR_SIZE);
+      int xfrBytes = Math.min (SECTOR_SIZE, length - Math.max (from, to));
+
+      if (xfrBytes > 0)
+        source.get (from, buffer, to, xfrBytes);
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public String toString ()
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+
+    formatText (text, "Logical sectors", 6, totalSectors);
+    formatText (text, "Interleaved", isInterleaved ());
+
+    return Utility.rtrim (text);
+  }
+}
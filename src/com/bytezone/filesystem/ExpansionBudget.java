@@ -0,0 +1,163 @@
+package com.bytezone.filesystem;
+
+import static com.bytezone.utility.Utility.formatText;
+
+import java.time.Duration;
+
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// Limits how far FileSystemFactory goes into images inside other images (a zip of
+// shk files holding disks that hold more shk files etc). The limits are how deeply
+// they are nested, how many bytes they add up to (after decompression) and how long
+// since the budget was created. A limit of zero means no limit.
+//
+// An embedded image that would break a limit is not read. It becomes an FsData whose
+// error message says why, and the rest of the image is read as usual. An image that
+// has to be decompressed is told how many bytes are left first, and stops as soon as
+// it goes past them, so a small file that inflates to gigabytes is never held. Once
+// the bytes or the time have run out no more embedded images are read at all. The
+// same budget can be shared by every image in a job, or a new one used for each
+// image. The time is only checked between embedded images, a single image is never
+// interrupted.
+// -----------------------------------------------------------------------------------//
+public class ExpansionBudget
+// -----------------------------------------------------------------------------------//
+{
+  private final int maxDepth;
+  private final long maxBytes;
+  private final long maxNanos;
+  private final long startTime = System.nanoTime ();
+
+  private long totalBytes;
+  private int totalExpanded;
+  private int totalRefused;
+  private String exhausted;                 // the limit that ran out, null if none
+
+  // ---------------------------------------------------------------------------------//
+  public ExpansionBudget (int maxDepth, long maxBytes, Duration maxTime)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.maxDepth = Math.max (0, maxDepth);
+    this.maxBytes = Math.max (0, maxBytes);
+    this.maxNanos = maxTime == null ? 0 : Math.max (0, maxTime.toNanos ());
+  }
+
+  // Before an embedded image is read. Returns why it must not be, or null.
+  // ---------------------------------------------------------------------------------//
+  synchronized String check (int depth)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (exhausted == null && maxNanos > 0 && System.nanoTime () - startTime > maxNanos)
+      exhausted = String.format ("time limit of %,d ms reached", maxNanos / 1_000_000);
+
+    if (exhausted != null)
+      return refuse (exhausted);
+
+    if (maxDepth > 0 && depth > maxDepth)
+      return refuse (String.format ("nested deeper than %d", maxDepth));
+
+    return null;
+  }
+
+  // Once the embedded image's bytes are known. Returns why it must not be read, or
+  // null if it fits in the budget.
+  // ---------------------------------------------------------------------------------//
+  synchronized String charge (long bytes)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (exhausted == null && maxBytes > 0 && totalBytes + bytes > maxBytes)
+      exhausted = String.format ("byte limit of %,d reached", maxBytes);
+
+    if (exhausted != null)
+      return refuse (exhausted);
+
+    totalBytes += bytes;
+    ++totalExpanded;
+
+    return null;
+  }
+
+  // the most bytes the next embedded image can be, Long.MAX_VALUE if there is no limit
+  // ---------------------------------------------------------------------------------//
+  synchronized long getRemainingBytes ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return maxBytes == 0 ? Long.MAX_VALUE : Math.max (0, maxBytes - totalBytes);
+  }
+
+  // An embedded image stopped decompressing because it was going to be bigger than
+  // getRemainingBytes(). Returns why it must not be read.
+  // ---------------------------------------------------------------------------------//
+  synchronized String overrun ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (exhausted == null)
+      exhausted = String.format ("byte limit of %,d reached", maxBytes);
+
+    return refuse (exhausted);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private String refuse (String reason)
+  // ---------------------------------------------------------------------------------//
+  {
+    ++totalRefused;
+    return reason;
+  }
+
+  // true if any embedded image was not read, so the results are incomplete
+  // ---------------------------------------------------------------------------------//
+  public synchronized boolean isPartial ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return totalRefused > 0;
+  }
+
+  // true once the bytes or the time have run out
+  // ---------------------------------------------------------------------------------//
+  public synchronized boolean isExhausted ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return exhausted != null;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized long getTotalBytes ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return totalBytes;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized int getTotalExpanded ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return totalExpanded;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized int getTotalRefused ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return totalRefused;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public synchronized String toString ()
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+
+    formatText (text, "Max depth", 4, maxDepth);
+    formatText (text, "Max bytes", 8, (int) Math.min (maxBytes, Integer.MAX_VALUE));
+    formatText (text, "Max ms", 8, (int) (maxNanos / 1_000_000));
+    formatText (text, "Total bytes", 8, (int) Math.min (totalBytes, Integer.MAX_VALUE));
+    formatText (text, "Expanded", 8, totalExpanded);
+    formatText (text, "Refused", 8, totalRefused);
+    formatText (text, "Exhausted", exhausted == null ? "" : exhausted);
+
+    return Utility.rtrim (text);
+  }
+}
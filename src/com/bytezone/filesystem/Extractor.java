@@ -0,0 +1,382 @@
+package com.bytezone.filesystem;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bytezone.filesystem.FileSystemWalker.Kind;
+import com.bytezone.filesystem.FileSystemWalker.Node;
+
+// -----------------------------------------------------------------------------------//
+// Copies every file and fork in a file system to a folder on the host, along with the
+// files inside any embedded disks and archives. Folders become folders, a forked file
+// becomes a folder holding its forks, and the contents of an embedded file system go
+// in a folder named after the file holding it, with ".contents" on the end. Names that
+// the host can't use have those characters replaced with '_', and duplicate names get
+// a number on the end.
+//
+// The catalogs are walked on the calling thread. Reading each file (and decompressing
+// it) and writing it to the host are done by a pool of worker threads. A file is only
+// handed to a worker when its length fits in what is left of maxBytesInFlight, so the
+// memory used never grows much beyond that, however big the archive. A file holding
+// embedded file systems is opened by the same worker, which then extracts their files
+// itself, and the file's buffers are only released when it has finished.
+//
+// The Apple file type, aux type, dates etc of every file are written to a tab
+// separated file called SIDECAR in the top folder, so that they are not lost.
+// -----------------------------------------------------------------------------------//
+public class Extractor
+// -----------------------------------------------------------------------------------//
+{
+  public static final String SIDECAR = "_attributes.tsv";
+  private static final String CONTENTS = ".contents";
+  private static final String ILLEGAL = "/\\:*?\"<>|";
+  private static final int KB = 1024;
+
+  private final int parallelism;
+  private final int budgetKB;               // Semaphore permits are ints
+
+  // ---------------------------------------------------------------------------------//
+  public record Summary (int files, int folders, long bytes, int failed,
+      Duration elapsed)
+  // ---------------------------------------------------------------------------------//
+  {
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public Extractor (int parallelism, long maxBytesInFlight)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (parallelism < 1)
+      throw new IllegalArgumentException ("Parallelism must be at least 1");
+    if (maxBytesInFlight < KB)
+      throw new IllegalArgumentException ("Budget must be at least 1 KB");
+
+    this.parallelism = parallelism;
+    this.budgetKB = (int) Math.min (Integer.MAX_VALUE, maxBytesInFlight / KB);
+  }
+
+  // Returns when every file has been written. A file that can't be read or written is
+  // counted as failed and skipped.
+  // ---------------------------------------------------------------------------------//
+  public Summary extract (AppleFileSystem fileSystem, Path folder) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    long start = System.nanoTime ();
+    Files.createDirectories (folder);
+
+    Run run = new Run (folder);
+
+    try (BufferedWriter sidecar = Files.newBufferedWriter (folder.resolve (SIDECAR));
+        ExecutorService executor = Executors.newFixedThreadPool (parallelism))
+    {
+      sidecar.write ("path\tappleName\tfileSystem\tfileType\tfileTypeText\tauxType"
+          + "\tlength\tlocked\tcreated\tmodified\n");
+
+      run.sidecar = sidecar;
+      run.executor = executor;
+
+      walk (fileSystem, folder, run, false);
+    }                                   // waits for the last files to be written
+
+    return new Summary (run.files.get (), run.folders.get (), run.bytes.get (),
+        run.failed.get (), Duration.ofNanos (System.nanoTime () - start));
+  }
+
+  // onWorker is true when walking an embedded file system, the files are then written
+  // by the worker that opened it
+  // ---------------------------------------------------------------------------------//
+  private void walk (AppleFileSystem fileSystem, Path folder, Run run, boolean onWorker)
+      throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    List<Path> parents = new ArrayList<> ();     // the host folder at each depth
+    parents.add (folder);
+
+    FileSystemWalker walker = new FileSystemWalker ();
+    walker.setEmbedded (false);                  // done here, see visit()
+
+    try
+    {
+      walker.walk (fileSystem, node ->
+      {
+        try
+        {
+          visit (node, parents, run, onWorker);
+        }
+        catch (IOException e)
+        {
+          throw new UncheckedIOException (e);
+        }
+      });
+    }
+    catch (UncheckedIOException e)
+    {
+      throw e.getCause ();
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void visit (Node node, List<Path> parents, Run run, boolean onWorker)
+      throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    if (node.depth () == 0)                     // the top file system
+      return;
+
+    Path parent = parents.get (node.depth () - 1);
+
+    if (node.kind () == Kind.FILE_SYSTEM)       // one half of a hybrid etc
+    {
+      String name = node.path ().substring (node.path ().lastIndexOf ('/') + 1);
+      setParent (parents, node.depth (), makeFolder (parent, name, run));
+      return;
+    }
+
+    AppleFile file = node.file ();
+
+    if (node.kind () == Kind.FOLDER || file.isForkedFile ())
+    {
+      Path hostFolder = makeFolder (parent, file.getFileName (), run);
+      setParent (parents, node.depth (), hostFolder);
+      writeAttributes (hostFolder, node, run);
+      return;
+    }
+
+    Path hostFile = run.getUniquePath (parent, file.getFileName ());
+    writeAttributes (hostFile, node, run);
+
+    if (onWorker)
+      extractFile (file, parent, hostFile, run);
+    else
+      submit (file, parent, hostFile, run);
+  }
+
+  // Waits until the file fits in the budget. A file bigger than the whole budget has
+  // to wait until nothing else is in flight.
+  // ---------------------------------------------------------------------------------//
+  private void submit (AppleFile file, Path parent, Path hostFile, Run run)
+      throws InterruptedIOException
+  // ---------------------------------------------------------------------------------//
+  {
+    int permits = Math.min (budgetKB, file.getFileLength () / KB + 1);
+
+    try
+    {
+      run.inFlight.acquire (permits);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new InterruptedIOException ("Extraction interrupted");
+    }
+
+    run.executor.execute (() ->
+    {
+      try
+      {
+        extractFile (file, parent, hostFile, run);
+      }
+      finally
+      {
+        run.inFlight.release (permits);
+      }
+    });
+  }
+
+  // Called on a worker thread. The file is written, then any file systems embedded in
+  // it are opened (decompressing it if it hasn't been already) and their files are
+  // extracted, before its buffers are released.
+  // ---------------------------------------------------------------------------------//
+  private void extractFile (AppleFile file, Path parent, Path hostFile, Run run)
+  // ---------------------------------------------------------------------------------//
+  {
+    try
+    {
+      run.bytes.addAndGet (write (file, hostFile));
+      run.files.incrementAndGet ();
+
+      if (file.hasEmbeddedFileSystem ())
+      {
+        List<AppleFileSystem> embedded = file.getEmbeddedFileSystems ();
+
+        for (int i = 0; i < embedded.size (); i++)
+        {
+          String name = hostFile.getFileName () + CONTENTS + (i == 0 ? "" : i + 1);
+          Path contents = makeFolder (parent, name, run);
+          walk (embedded.get (i), contents, run, true);
+        }
+      }
+    }
+    catch (IOException | RuntimeException e)
+    {
+      System.out.printf ("Failed to extract %s: %s%n", hostFile, e);
+      run.failed.incrementAndGet ();
+    }
+    finally
+    {
+      if (file instanceof AbstractAppleFile appleFile)
+        appleFile.releaseFileBuffers ();
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private long write (AppleFile file, Path hostFile) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    Buffer buffer = FileSystemWalker.getContents (file);
+    ByteBuffer byteBuffer = buffer == null ? ByteBuffer.allocate (0)
+        : ByteBuffer.wrap (buffer.data (), buffer.offset (), buffer.length ());
+    int length = byteBuffer.remaining ();
+
+    try (FileChannel channel = FileChannel.open (hostFile, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      while (byteBuffer.hasRemaining ())
+        channel.write (byteBuffer);
+    }
+
+    return length;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private Path makeFolder (Path parent, String name, Run run) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    Path folder = run.getUniquePath (parent, name);
+    Files.createDirectories (folder);
+    run.folders.incrementAndGet ();
+
+    return folder;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void setParent (List<Path> parents, int depth, Path folder)
+  // ---------------------------------------------------------------------------------//
+  {
+    while (parents.size () <= depth)
+      parents.add (null);
+
+    parents.set (depth, folder);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void writeAttributes (Path hostPath, Node node, Run run) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    AppleFile file = node.file ();
+    String path = run.root.relativize (hostPath).toString ().replace ('\\', '/');
+
+    run.sidecar.write (String.join ("\t", path, clean (file.getFileName ()),
+        node.fileSystem ().getFileSystemType ().toString (),
+        String.format ("%02X", file.getFileType ()), clean (file.getFileTypeText ()),
+        String.format ("%04X", FileSystemWalker.getAuxType (file)),
+        String.valueOf (file.getFileLength ()), String.valueOf (file.isLocked ()),
+        toText (FileSystemWalker.getCreated (file)),
+        toText (FileSystemWalker.getModified (file))) + "\n");
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static String toText (LocalDateTime dateTime)
+  // ---------------------------------------------------------------------------------//
+  {
+    return dateTime == null ? "" : dateTime.toString ();
+  }
+
+  // no tabs or newlines in the sidecar
+  // ---------------------------------------------------------------------------------//
+  private static String clean (String text)
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder cleaned = new StringBuilder (text.length ());
+
+    for (char c : text.toCharArray ())
+      cleaned.append (c < 0x20 ? ' ' : c);
+
+    return cleaned.toString ();
+  }
+
+  // a name the host can use
+  // ---------------------------------------------------------------------------------//
+  static String getHostName (String name)
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder hostName = new StringBuilder (name.length ());
+
+    for (char c : name.trim ().toCharArray ())
+      hostName.append (c < 0x20 || c == 0x7F || ILLEGAL.indexOf (c) >= 0 ? '_' : c);
+
+    while (hostName.length () > 0 && hostName.charAt (hostName.length () - 1) == '.')
+      hostName.setLength (hostName.length () - 1);     // Windows ignores these
+
+    return hostName.isEmpty () || hostName.charAt (0) == '.' ? "_" + hostName
+        : hostName.toString ();
+  }
+
+  // The state of one call to extract(). The workers walk embedded file systems too, so
+  // everything here is shared between threads.
+  // ---------------------------------------------------------------------------------//
+  private class Run
+  // ---------------------------------------------------------------------------------//
+  {
+    final Path root;
+    final Semaphore inFlight = new Semaphore (budgetKB);
+    final Set<String> usedPaths = new HashSet<> ();      // lower case, see below
+
+    final AtomicInteger files = new AtomicInteger ();
+    final AtomicInteger failed = new AtomicInteger ();
+    final AtomicLong bytes = new AtomicLong ();
+    final AtomicInteger folders = new AtomicInteger ();
+
+    BufferedWriter sidecar;
+    ExecutorService executor;
+
+    // ---------------------------------------------------------------------------------//
+    Run (Path root)
+    // ---------------------------------------------------------------------------------//
+    {
+      this.root = root;
+      usedPaths.add (key (root.resolve (SIDECAR)));
+    }
+
+    // Apple file systems can have duplicate names (DOS), and names that only differ in
+    // case (CP/M, archives), which some hosts can't tell apart
+    // ---------------------------------------------------------------------------------//
+    synchronized Path getUniquePath (Path parent, String name)
+    // ---------------------------------------------------------------------------------//
+    {
+      String hostName = getHostName (name);
+      Path path = parent.resolve (hostName);
+
+      for (int copy = 2; !usedPaths.add (key (path)); copy++)
+        path = parent.resolve (hostName + "_" + copy);
+
+      return path;
+    }
+
+    // ---------------------------------------------------------------------------------//
+    private String key (Path path)
+    // ---------------------------------------------------------------------------------//
+    {
+      return path.toString ().toLowerCase (Locale.ROOT);
+    }
+  }
+}
@@ -2,6 +2,7 @@ package com.bytezone.filesystem;
 
 import static com.bytezone.utility.Utility.formatText;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -147,21 +148,34 @@ public abstract class FileDos extends AbstractAppleFile
   // NB zardax files seem to use 0 as eof
   // Some text files on DISASM1.DSK contain a single zero two bytes before eof. They
   // are all assembler source files, so should not be counted as random-access files.
+  // The blocks are tested one at a time rather than reading the whole file, as this is
+  // called while the catalog is being read. getByteBuffer() looks at the disk itself,
+  // so nothing is left in the block buffers afterwards.
   // ---------------------------------------------------------------------------------//
   private boolean fileContainsZero ()
   // ---------------------------------------------------------------------------------//
   {
     assert fileGaps == 0;
 
-    // test entire buffer (in case reclen > block size)
-    Buffer rawBuffer = getRawFileBuffer ();
-    byte[] buffer = rawBuffer.data ();
+    int blockSize = parentFileSystem.getBlockSize ();
+    int max = (eof > 0 ? eof : dataBlocks.size () * blockSize) - 2;   // ignore last two
+    int blockStart = 0;
 
-    int max = (eof > 0 ? eof : rawBuffer.max ()) - 2;      // ignore the last two bytes
+    // test entire file (in case reclen > block size)
+    for (AppleBlock block : dataBlocks)
+    {
+      if (blockStart >= max)
+        break;
 
-    for (int i = rawBuffer.offset (); i < max; i++)
-      if (buffer[i] == 0)
-        return true;
+      ByteBuffer buffer = block.getByteBuffer ();
+      int last = Math.min (blockSize, max - blockStart);
+
+      for (int i = 0; i < last; i++)
+        if (buffer.get (i) == 0)
+          return true;
+
+      blockStart += blockSize;
+    }
 
     return false;
   }
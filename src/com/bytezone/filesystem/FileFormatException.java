@@ -1,5 +1,9 @@
 package com.bytezone.filesystem;
 
+// -----------------------------------------------------------------------------------//
+// Thrown when the bytes are not what a file system expects. This mostly happens while
+// FileSystemFactory is probing a disk, so the message is all that is kept - filling
+// in a stack trace would cost far more than the check that failed.
 // -----------------------------------------------------------------------------------//
 public class FileFormatException extends RuntimeException
 // -----------------------------------------------------------------------------------//
@@ -10,6 +14,8 @@ public class FileFormatException extends RuntimeException
   public FileFormatException (String string)
   // ---------------------------------------------------------------------------------//
   {
+    super (string, null, false, false);
+
     this.message = string;
   }
 
@@ -0,0 +1,622 @@
+package com.bytezone.filesystem;
+
+import static com.bytezone.utility.Utility.formatText;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.bytezone.filesystem.FileSystemWalker.Kind;
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// Every file in a collection of disk images, including the files inside embedded disks
+// and archives, so that questions like "which disks have a BIN file called X with aux
+// $2000" can be answered without opening any images. For each file it keeps the path
+// inside the image, file type, aux type, length, dates and a hash of its contents.
+//
+// The index is held in columns. The file names are kept once each in a dictionary
+// sorted without regard to case, and the files are sorted by name, so the files with
+// a given name (or name prefix) are found with a binary search. The same layout is
+// written to the index file. update() only opens the images whose length or modified
+// time has changed since they were last indexed.
+// -----------------------------------------------------------------------------------//
+public class FileIndex
+// -----------------------------------------------------------------------------------//
+{
+  public static final int ANY = -1;               // any file type or aux type
+
+  private static final int MAGIC = 0x41464958;    // AFIX
+  private static final int VERSION = 1;
+  private static final long NO_DATE = Long.MIN_VALUE;
+
+  private final Path indexFile;
+  private Columns columns = new Columns (new TreeMap<> ());
+
+  // ---------------------------------------------------------------------------------//
+  public record Hit (Path image, String path, int fileType, int auxType, int length,
+      LocalDateTime created, LocalDateTime modified, long hash)
+  // ---------------------------------------------------------------------------------//
+  {
+  }
+
+  // one file inside an image, the folder is the path without the file name
+  // ---------------------------------------------------------------------------------//
+  record Row (String folder, String name, int fileType, int auxType, int length,
+      long created, long modified, long hash)
+  // ---------------------------------------------------------------------------------//
+  {
+  }
+
+  // ---------------------------------------------------------------------------------//
+  record Image (long length, long lastModified, List<Row> rows)
+  // ---------------------------------------------------------------------------------//
+  {
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public FileIndex (Path indexFile)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.indexFile = indexFile;
+
+    if (Files.exists (indexFile))
+      load ();
+  }
+
+  // Index every image under the folder that is new or has changed, and forget the
+  // images under it that no longer exist. Images elsewhere are left alone.
+  // ---------------------------------------------------------------------------------//
+  public synchronized CatalogProgress update (Path folder, Cataloguer cataloguer)
+      throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    Map<String, Image> images = columns.getImages ();
+    Map<String, Image> known = Map.copyOf (images);     // read by the walking thread
+    Map<String, Image> indexed = new HashMap<> ();      // written by the sink
+    Set<String> found = new HashSet<> ();
+
+    cataloguer.setImageFilter (path ->
+    {
+      String key = getKey (path);
+      found.add (key);
+
+      Image image = known.get (key);
+      return image == null || image.length != path.toFile ().length ()
+          || image.lastModified != path.toFile ().lastModified ();
+    });
+
+    CatalogProgress progress;
+    try
+    {
+      progress = cataloguer.catalog (folder, this::index,
+          entry -> indexed.put (entry.getKey (), entry.getValue ()));
+    }
+    finally
+    {
+      cataloguer.setImageFilter (path -> true);
+    }
+
+    images.putAll (indexed);
+
+    Path root = Path.of (getKey (folder));
+    images.keySet ()
+        .removeIf (key -> Path.of (key).startsWith (root) && !found.contains (key));
+
+    columns = new Columns (images);
+
+    return progress;
+  }
+
+  // Called on the image's own thread. An image that could not be opened is still
+  // indexed (with no files) so that it is not tried again until it changes.
+  // ---------------------------------------------------------------------------------//
+  private Map.Entry<String, Image> index (Cataloguer.Result result)
+  // ---------------------------------------------------------------------------------//
+  {
+    List<Row> rows = new ArrayList<> ();
+
+    if (!result.failed ())
+      new FileSystemWalker ().walk (result.fileSystem (), node ->
+      {
+        if (node.kind () == Kind.FILE || node.kind () == Kind.FORK)
+          rows.add (getRow (node.path (), node.file ()));
+      });
+
+    return Map.entry (getKey (result.path ()),
+        new Image (result.length (), result.path ().toFile ().lastModified (), rows));
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private Row getRow (String path, AppleFile file)
+  // ---------------------------------------------------------------------------------//
+  {
+    int pos = path.lastIndexOf ('/');
+    String folder = pos < 0 ? "" : path.substring (0, pos);
+    String name = path.substring (pos + 1);
+
+    long hash = 0;
+    if (!file.isForkedFile ())
+      try
+      {
+        hash = FileSystemWalker.getContents (file).hash ();
+      }
+      catch (RuntimeException e)                // the file can't be read
+      {
+      }
+
+    return new Row (folder, name, file.getFileType (), FileSystemWalker.getAuxType (file),
+        file.getFileLength (), toLong (FileSystemWalker.getCreated (file)),
+        toLong (FileSystemWalker.getModified (file)), hash);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static long toLong (LocalDateTime dateTime)
+  // ---------------------------------------------------------------------------------//
+  {
+    return dateTime == null ? NO_DATE : dateTime.toEpochSecond (ZoneOffset.UTC);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static LocalDateTime toDateTime (long seconds)
+  // ---------------------------------------------------------------------------------//
+  {
+    return seconds == NO_DATE ? null
+        : LocalDateTime.ofEpochSecond (seconds, 0, ZoneOffset.UTC);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static String getKey (Path path)
+  // ---------------------------------------------------------------------------------//
+  {
+    return path.toAbsolutePath ().normalize ().toString ();
+  }
+
+  // Files called name (ignoring case), or starting with it if it ends with '*'. A null
+  // name matches every file. Use ANY for any file type or aux type.
+  // ---------------------------------------------------------------------------------//
+  public synchronized List<Hit> find (String name, int fileType, int auxType)
+  // ---------------------------------------------------------------------------------//
+  {
+    return columns.find (name, fileType, auxType);
+  }
+
+  // every file with these contents
+  // ---------------------------------------------------------------------------------//
+  public synchronized List<Hit> findByHash (long hash)
+  // ---------------------------------------------------------------------------------//
+  {
+    return columns.findByHash (hash);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized int getTotalImages ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return columns.images.length;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized int getTotalFiles ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return columns.totalRows;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void load ()
+  // ---------------------------------------------------------------------------------//
+  {
+    try (DataInputStream in = new DataInputStream (
+        new BufferedInputStream (Files.newInputStream (indexFile))))
+    {
+      if (in.readInt () != MAGIC || in.readInt () != VERSION)
+      {
+        System.out.printf ("Ignoring index file: %s%n", indexFile);
+        return;
+      }
+
+      columns = new Columns (in);
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace ();
+    }
+  }
+
+  // Written to a temporary file first so that a failed save never loses the index
+  // ---------------------------------------------------------------------------------//
+  public synchronized void save ()
+  // ---------------------------------------------------------------------------------//
+  {
+    Path tempFile = indexFile.resolveSibling (indexFile.getFileName () + ".tmp");
+
+    try
+    {
+      try (DataOutputStream out = new DataOutputStream (
+          new BufferedOutputStream (Files.newOutputStream (tempFile))))
+      {
+        out.writeInt (MAGIC);
+        out.writeInt (VERSION);
+        columns.write (out);
+      }
+
+      Files.move (tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace ();
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public synchronized String toString ()
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+
+    formatText (text, "Index file", indexFile.toString ());
+    formatText (text, "Images", 8, columns.images.length);
+    formatText (text, "Files", 8, columns.totalRows);
+    formatText (text, "Names", 8, columns.names.length);
+    formatText (text, "Folders", 8, columns.folders.length);
+
+    return Utility.rtrim (text);
+  }
+
+  // The whole index, one array per column. The rows are sorted by name, and the rows
+  // for names[n] are nameStart[n] up to nameStart[n + 1].
+  // ---------------------------------------------------------------------------------//
+  private static class Columns
+  // ---------------------------------------------------------------------------------//
+  {
+    final String[] images;
+    final long[] imageLength;
+    final long[] imageModified;
+
+    final String[] names;                       // sorted, ignoring case
+    final String[] folders;
+    final int[] nameStart;
+
+    final int totalRows;
+    final int[] image;
+    final int[] folder;
+    final int[] fileType;
+    final int[] auxType;
+    final int[] length;
+    final long[] created;
+    final long[] modified;
+    final long[] hash;
+
+    // ---------------------------------------------------------------------------------//
+    Columns (Map<String, Image> imageMap)
+    // ---------------------------------------------------------------------------------//
+    {
+      images = imageMap.keySet ().toArray (new String[0]);
+      imageLength = new long[images.length];
+      imageModified = new long[images.length];
+
+      Set<String> nameSet = new TreeSet<> (FileIndex::compareNames);
+      Set<String> folderSet = new TreeSet<> ();
+      int rows = 0;
+
+      for (Image entry : imageMap.values ())
+        for (Row row : entry.rows)
+        {
+          nameSet.add (row.name);
+          folderSet.add (row.folder);
+          ++rows;
+        }
+
+      names = nameSet.toArray (new String[0]);
+      folders = folderSet.toArray (new String[0]);
+      Map<String, Integer> nameIds = getIds (names);
+      Map<String, Integer> folderIds = getIds (folders);
+
+      // sort the rows by name, keeping the image order within each name
+      long[] order = new long[rows];
+      Row[] allRows = new Row[rows];
+      int[] rowImage = new int[rows];
+      int rowNo = 0;
+
+      for (int imageNo = 0; imageNo < images.length; imageNo++)
+      {
+        Image entry = imageMap.get (images[imageNo]);
+        imageLength[imageNo] = entry.length;
+        imageModified[imageNo] = entry.lastModified;
+
+        for (Row row : entry.rows)
+        {
+          order[rowNo] = (long) nameIds.get (row.name) << 32 | rowNo;
+          allRows[rowNo] = row;
+          rowImage[rowNo++] = imageNo;
+        }
+      }
+
+      Arrays.sort (order);
+
+      totalRows = rows;
+      nameStart = new int[names.length + 1];
+      image = new int[rows];
+      folder = new int[rows];
+      fileType = new int[rows];
+      auxType = new int[rows];
+      length = new int[rows];
+      created = new long[rows];
+      modified = new long[rows];
+      hash = new long[rows];
+
+      for (int i = 0; i < rows; i++)
+      {
+        int from = (int) order[i];
+        Row row = allRows[from];
+
+        ++nameStart[(int) (order[i] >>> 32) + 1];
+        image[i] = rowImage[from];
+        folder[i] = folderIds.get (row.folder);
+        fileType[i] = row.fileType;
+        auxType[i] = row.auxType;
+        length[i] = row.length;
+        created[i] = row.created;
+        modified[i] = row.modified;
+        hash[i] = row.hash;
+      }
+
+      for (int i = 1; i < nameStart.length; i++)
+        nameStart[i] += nameStart[i - 1];
+    }
+
+    // ---------------------------------------------------------------------------------//
+    Columns (DataInputStream in) throws IOException
+    // ---------------------------------------------------------------------------------//
+    {
+      images = new String[in.readInt ()];
+      imageLength = new long[images.length];
+      imageModified = new long[images.length];
+
+      for (int i = 0; i < images.length; i++)
+      {
+        images[i] = in.readUTF ();
+        imageLength[i] = in.readLong ();
+        imageModified[i] = in.readLong ();
+      }
+
+      names = readStrings (in);
+      folders = readStrings (in);
+      nameStart = readInts (in, names.length + 1);
+
+      totalRows = in.readInt ();
+      image = readInts (in, totalRows);
+      folder = readInts (in, totalRows);
+      fileType = readInts (in, totalRows);
+      auxType = readInts (in, totalRows);
+      length = readInts (in, totalRows);
+      created = readLongs (in, totalRows);
+      modified = readLongs (in, totalRows);
+      hash = readLongs (in, totalRows);
+    }
+
+    // ---------------------------------------------------------------------------------//
+    void write (DataOutputStream out) throws IOException
+    // ---------------------------------------------------------------------------------//
+    {
+      out.writeInt (images.length);
+      for (int i = 0; i < images.length; i++)
+      {
+        out.writeUTF (images[i]);
+        out.writeLong (imageLength[i]);
+        out.writeLong (imageModified[i]);
+      }
+
+      writeStrings (out, names);
+      writeStrings (out, folders);
+      writeInts (out, nameStart);
+
+      out.writeInt (totalRows);
+      writeInts (out, image);
+      writeInts (out, folder);
+      writeInts (out, fileType);
+      writeInts (out, auxType);
+      writeInts (out, length);
+      writeLongs (out, created);
+      writeLongs (out, modified);
+      writeLongs (out, hash);
+    }
+
+    // the images and their files again, to be changed by update()
+    // ---------------------------------------------------------------------------------//
+    Map<String, Image> getImages ()
+    // ---------------------------------------------------------------------------------//
+    {
+      Map<String, Image> imageMap = new TreeMap<> ();
+
+      for (int i = 0; i < images.length; i++)
+        imageMap.put (images[i],
+            new Image (imageLength[i], imageModified[i], new ArrayList<> ()));
+
+      for (int nameNo = 0; nameNo < names.length; nameNo++)
+        for (int i = nameStart[nameNo]; i < nameStart[nameNo + 1]; i++)
+          imageMap.get (images[image[i]]).rows.add (new Row (folders[folder[i]],
+              names[nameNo], fileType[i], auxType[i], length[i], created[i], modified[i],
+              hash[i]));
+
+      return imageMap;
+    }
+
+    // ---------------------------------------------------------------------------------//
+    List<Hit> find (String name, int fileType, int auxType)
+    // ---------------------------------------------------------------------------------//
+    {
+      int first = 0;
+      int last = names.length;
+
+      if (name != null)
+      {
+        boolean prefix = name.endsWith ("*");
+        if (prefix)
+          name = name.substring (0, name.length () - 1);
+
+        first = lowerBound (name);
+        last = first;
+
+        while (last < names.length && (prefix
+            ? names[last].regionMatches (true, 0, name, 0, name.length ())
+            : names[last].equalsIgnoreCase (name)))
+          ++last;
+      }
+
+      List<Hit> hits = new ArrayList<> ();
+
+      for (int nameNo = first; nameNo < last; nameNo++)
+        for (int i = nameStart[nameNo]; i < nameStart[nameNo + 1]; i++)
+          if ((fileType == ANY || this.fileType[i] == fileType)
+              && (auxType == ANY || this.auxType[i] == auxType))
+            hits.add (getHit (nameNo, i));
+
+      return hits;
+    }
+
+    // ---------------------------------------------------------------------------------//
+    List<Hit> findByHash (long hash)
+    // ---------------------------------------------------------------------------------//
+    {
+      List<Hit> hits = new ArrayList<> ();
+
+      for (int nameNo = 0; nameNo < names.length; nameNo++)
+        for (int i = nameStart[nameNo]; i < nameStart[nameNo + 1]; i++)
+          if (this.hash[i] == hash)
+            hits.add (getHit (nameNo, i));
+
+      return hits;
+    }
+
+    // the first name that is not less than this one
+    // ---------------------------------------------------------------------------------//
+    private int lowerBound (String name)
+    // ---------------------------------------------------------------------------------//
+    {
+      int lo = 0;
+      int hi = names.length;
+
+      while (lo < hi)
+      {
+        int mid = (lo + hi) >>> 1;
+        if (String.CASE_INSENSITIVE_ORDER.compare (names[mid], name) < 0)
+          lo = mid + 1;
+        else
+          hi = mid;
+      }
+
+      return lo;
+    }
+
+    // ---------------------------------------------------------------------------------//
+    private Hit getHit (int nameNo, int row)
+    // ---------------------------------------------------------------------------------//
+    {
+      String name = names[nameNo];
+      String folderName = folders[folder[row]];
+      String path = folderName.isEmpty () ? name : folderName + "/" + name;
+
+      return new Hit (Path.of (images[image[row]]), path, fileType[row], auxType[row],
+          length[row], toDateTime (created[row]), toDateTime (modified[row]), hash[row]);
+    }
+
+    // ---------------------------------------------------------------------------------//
+    private static Map<String, Integer> getIds (String[] values)
+    // ---------------------------------------------------------------------------------//
+    {
+      Map<String, Integer> ids = new HashMap<> ();
+      for (int i = 0; i < values.length; i++)
+        ids.put (values[i], i);
+
+      return ids;
+    }
+
+    // ---------------------------------------------------------------------------------//
+    private static String[] readStrings (DataInputStream in) throws IOException
+    // ---------------------------------------------------------------------------------//
+    {
+      String[] values = new String[in.readInt ()];
+      for (int i = 0; i < values.length; i++)
+        values[i] = in.readUTF ();
+
+      return values;
+    }
+
+    // ---------------------------------------------------------------------------------//
+    private static int[] readInts (DataInputStream in, int size) throws IOException
+    // ---------------------------------------------------------------------------------//
+    {
+      int[] values = new int[size];
+      for (int i = 0; i < size; i++)
+        values[i] = in.readInt ();
+
+      return values;
+    }
+
+    // ---------------------------------------------------------------------------------//
+    private static long[] readLongs (DataInputStream in, int size) throws IOException
+    // ---------------------------------------------------------------------------------//
+    {
+      long[] values = new long[size];
+      for (int i = 0; i < size; i++)
+        values[i] = in.readLong ();
+
+      return values;
+    }
+
+    // ---------------------------------------------------------------------------------//
+    private static void writeStrings (DataOutputStream out, String[] values)
+        throws IOException
+    // ---------------------------------------------------------------------------------//
+    {
+      out.writeInt (values.length);
+      for (String value : values)
+        out.writeUTF (value);
+    }
+
+    // ---------------------------------------------------------------------------------//
+    private static void writeInts (DataOutputStream out, int[] values) throws IOException
+    // ---------------------------------------------------------------------------------//
+    {
+      for (int value : values)
+        out.writeInt (value);
+    }
+
+    // ---------------------------------------------------------------------------------//
+    private static void writeLongs (DataOutputStream out, long[] values)
+        throws IOException
+    // ---------------------------------------------------------------------------------//
+    {
+      for (long value : values)
+        out.writeLong (value);
+    }
+  }
+
+  // ignoring case, but names that differ only in case are still different
+  // ---------------------------------------------------------------------------------//
+  private static int compareNames (String name1, String name2)
+  // ---------------------------------------------------------------------------------//
+  {
+    int result = String.CASE_INSENSITIVE_ORDER.compare (name1, name2);
+    return result != 0 ? result : name1.compareTo (name2);
+  }
+}
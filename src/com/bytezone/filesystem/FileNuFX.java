@@ -348,6 +348,58 @@ public class FileNuFX extends AbstractAppleFile implements AppleFilePath, AppleF
     }
   }
 
+  // The thread header's eof is checked before decoding, and the decoders stop at
+  // maxBytes in case it is wrong.
+  // ---------------------------------------------------------------------------------//
+  @Override
+  Buffer getRawFileBuffer (long maxBytes)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (isForkedFile)
+      throw new FileFormatException ("Cannot read() a forked file");
+
+    if (rawFileBuffer != null)
+      return rawFileBuffer.length () > maxBytes ? null : rawFileBuffer;
+
+    if (getUncompressedSize () > maxBytes)
+      return null;
+
+    try           // some nufx files are corrupt
+    {
+      if (isDiskImage)
+      {
+        byte[] buffer = diskImageThread.getData (maxBytes);
+        if (buffer != null)
+          rawFileBuffer = new Buffer (buffer, 0, buffer.length);
+
+        return rawFileBuffer;
+      }
+
+      rawFileBuffer = dataFork.getRawFileBuffer (maxBytes);
+      return rawFileBuffer;
+    }
+    catch (Exception e)
+    {
+      errorMessage = String.format ("Reading NuFX file %s failed : %s%n",
+          getFullFileName (), e.getMessage ());
+
+      return null;
+    }
+  }
+
+  // the threads can always be decompressed again
+  // ---------------------------------------------------------------------------------//
+  @Override
+  void releaseFileBuffers ()
+  // ---------------------------------------------------------------------------------//
+  {
+    rawFileBuffer = null;
+    exactFileBuffer = null;
+
+    if (dataFork != null)
+      dataFork.releaseFileBuffers ();
+  }
+
   // ---------------------------------------------------------------------------------//
   @Override
   public List<AppleBlock> getDataBlocks ()
@@ -1,5 +1,6 @@
 package com.bytezone.filesystem;
 
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -189,6 +190,31 @@ public class FileProdos extends AbstractAppleFile //implements AppleForkedFile
     return dataFork.getRawFileBuffer ();
   }
 
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public ByteBuffer getRawFileView ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (isForkedFile ())
+      return super.getRawFileView ();
+
+    return dataFork.getRawFileView ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  void releaseFileBuffers ()
+  // ---------------------------------------------------------------------------------//
+  {
+    super.releaseFileBuffers ();
+
+    if (!isForkedFile ())
+    {
+      exactFileBuffer = null;
+      dataFork.releaseFileBuffers ();
+    }
+  }
+
   // ---------------------------------------------------------------------------------//
   @Override
   public int getFileLength ()                                       // in bytes (eof)
@@ -2,10 +2,20 @@ package com.bytezone.filesystem;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-
-import com.bytezone.filesystem.AppleFileSystem.FileSystemType;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import com.bytezone.filesystem.DetectionCache.Detection;
+import com.bytezone.filesystem.ProbeRegistry.Group;
+import com.bytezone.filesystem.ProbeRegistry.ProbeDescriptor;
 import com.bytezone.utility.Utility;
 
 // see https://ciderpress2.com/doc-index.html
@@ -13,16 +23,6 @@ import com.bytezone.utility.Utility;
 public class FileSystemFactory
 // -----------------------------------------------------------------------------------//
 {
-  private static final int SECTOR_35_13_SIZE = 116_480;
-  private static final int SECTOR_35_16_SIZE = 143_360;
-  private static final int SECTOR_35_32_SIZE = 286_720;
-  private static final int SECTOR_40_16_SIZE = 163_840;
-  private static final int SECTOR_40_32_SIZE = 327_680;
-  private static final int SECTOR_48_16_SIZE = 196_608;
-  private static final int SECTOR_48_32_SIZE = 393_216;
-  private static final int UNIDOS_SIZE = 819_200;
-  private static final int CPAM_SIZE = 819_200;
-
   public static final DiskParameters dos1 = new DiskParameters (256, 0, 16);
   public static final DiskParameters dos2 = new DiskParameters (256, 1, 16);
   public static final DiskParameters dos31 = new DiskParameters (256, 0, 13);
@@ -37,9 +37,83 @@ public class FileSystemFactory
   public static final DiskParameters bin = new DiskParameters (128, 0, 0);
 
   private List<AppleFileSystem> fileSystems;
-  private List<String> errorMessages;
+  private Map<Integer, ProbeResult> probeResults;   // of every probe consulted
+  private ProbeRegistry probeRegistry = new ProbeRegistry ();
+  private List<ProbeDescriptor> probes;           // the registry's probes, by priority
+  private List<ProbeDescriptor> candidates;       // the only probes that will run
+  private DetectionCache detectionCache;
+  private Set<String> cachedProbes;               // the probes that matched last time
+  private List<Detection> detections;             // the probes that matched this time
+  private Executor probeExecutor;                 // null = one probe at a time
+  private ExpansionBudget expansionBudget;        // null = no limits
+  private Map<ProbeDescriptor, CompletableFuture<ProbeResult>> runningProbes;
 
   private boolean debug = false;
+  private boolean memoryMapped = false;
+  private int blockCacheSize = 0;
+
+  // Map image files read-only rather than reading them onto the heap. Block based
+  // file systems then copy straight from the mapped file.
+  // ---------------------------------------------------------------------------------//
+  public void setMemoryMapped (boolean memoryMapped)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.memoryMapped = memoryMapped;
+  }
+
+  // Byte budget for the block buffers of each file system, 0 = unlimited. Embedded
+  // file systems inherit the budget of their parent. See BlockCache.
+  // ---------------------------------------------------------------------------------//
+  public void setBlockCacheSize (int maxBytes)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.blockCacheSize = maxBytes;
+  }
+
+  // Run every format probe at once on the executor (eg virtual threads) instead of one
+  // after the other. The results are still combined in the same order, so the file
+  // system returned is the same either way. Embedded file systems are always probed
+  // one at a time. Null turns it off again.
+  // ---------------------------------------------------------------------------------//
+  public void setProbeExecutor (Executor probeExecutor)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.probeExecutor = probeExecutor;
+  }
+
+  // Limit the depth, bytes and time spent reading images embedded in the images this
+  // factory opens (see ExpansionBudget). Null removes the limits.
+  // ---------------------------------------------------------------------------------//
+  public void setExpansionBudget (ExpansionBudget expansionBudget)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.expansionBudget = expansionBudget;
+  }
+
+  // The probes to choose from. Share one registry between factories to let its
+  // statistics build up, see ProbeRegistry.
+  // ---------------------------------------------------------------------------------//
+  public void setProbeRegistry (ProbeRegistry probeRegistry)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.probeRegistry = Objects.requireNonNull (probeRegistry);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public ProbeRegistry getProbeRegistry ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return probeRegistry;
+  }
+
+  // Remember which probes matched each image file, so that the next time the same file
+  // is opened only those probes are run. Only getFileSystem (Path) uses the cache.
+  // ---------------------------------------------------------------------------------//
+  public void setDetectionCache (DetectionCache detectionCache)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.detectionCache = detectionCache;
+  }
 
   // ---------------------------------------------------------------------------------//
   public AppleFileSystem getFileSystem (Path path)
@@ -48,14 +122,65 @@ public class FileSystemFactory
     if (!path.toFile ().exists ())
       throw new FileFormatException (String.format ("Path %s does not exist%n", path));
 
-    return getFileSystem (new BlockReader (path));
+    BlockReader blockReader = new BlockReader (path, memoryMapped);
+    blockReader.setBlockCacheSize (blockCacheSize);
+
+    if (detectionCache == null)
+      return getFileSystem (blockReader);
+
+    List<Detection> cached = detectionCache.get (path, blockReader);
+    cachedProbes = cached == null ? null : getProbes (cached);
+
+    if (cachedProbes != null)
+    {
+      try
+      {
+        AppleFileSystem fs = getFileSystem (blockReader);
+        if (detections.size () == cached.size ())
+          return fs;
+      }
+      finally
+      {
+        cachedProbes = null;
+      }
+
+      detectionCache.remove (path);          // out of date, probe the image properly
+    }
+
+    AppleFileSystem fs = getFileSystem (blockReader);
+
+    if (detections.size () > 0)
+      detectionCache.put (path, blockReader, detections);
+
+    return fs;
+  }
+
+  // null if any of the probes no longer exists
+  // ---------------------------------------------------------------------------------//
+  private Set<String> getProbes (List<Detection> detections)
+  // ---------------------------------------------------------------------------------//
+  {
+    Set<String> probes = new HashSet<> ();
+
+    for (Detection detection : detections)
+    {
+      if (probeRegistry.getProbe (detection.probe ()) == null)
+        return null;
+
+      probes.add (detection.probe ());
+    }
+
+    return probes;
   }
 
   // ---------------------------------------------------------------------------------//
   public AppleFileSystem getFileSystem (String name, byte[] buffer)
   // ---------------------------------------------------------------------------------//
   {
-    return getFileSystem (new BlockReader (name, buffer));
+    BlockReader blockReader = new BlockReader (name, buffer);
+    blockReader.setBlockCacheSize (blockCacheSize);
+
+    return getFileSystem (blockReader);
   }
 
   // ---------------------------------------------------------------------------------//
@@ -64,8 +189,16 @@ public class FileSystemFactory
   {
     Objects.requireNonNull (blockReader);
 
+    // embedded images arrive with their parent's budget and depth
+    if (expansionBudget != null && blockReader.getExpansionBudget () == null)
+      blockReader.setExpansionBudget (expansionBudget, 0);
+
+    // the file systems found pass it on to the factories of their embedded images
+    blockReader.setProbeRegistry (probeRegistry);
+
     fileSystems = new ArrayList<> ();
-    errorMessages = new ArrayList<> ();
+    probeResults = new TreeMap<> ();
+    detections = new ArrayList<> ();
 
     if (debug)
     {
@@ -77,63 +210,29 @@ public class FileSystemFactory
       System.out.println ("-------------------------------------------------------");
     }
 
-    // keep checking for disk headers until there are none
     List<DiskHeader> diskHeaders = new ArrayList<> ();
+    blockReader = skipDiskHeaders (blockReader, diskHeaders);
+    probes = probeRegistry.getProbes ();
+    candidates = getCandidates (blockReader);
 
-    while (true)
-    {
-      if (DiskHeader2img.isValid (blockReader))
-      {
-        DiskHeader diskHeader = new DiskHeader2img (blockReader);
-        blockReader = diskHeader.getBlockReader ();
-        diskHeaders.add (diskHeader);
-        continue;
-      }
-
-      if (DiskHeaderDiskCopy.isValid (blockReader))
-      {
-        DiskHeader diskHeader = new DiskHeaderDiskCopy (blockReader);
-        blockReader = diskHeader.getBlockReader ();
-        diskHeaders.add (diskHeader);
-        continue;
-      }
-
-      break;
-    }
-
-    getDos33 (blockReader);           // DOS can be a hybrid with Prodos, CPM or Pascal
-
-    if (fileSystems.size () == 0)
-      getDos4 (blockReader);
-
-    int soFar = fileSystems.size ();      // either 0 or 1
-
-    getPascal (blockReader);
+    if (debug)
+      System.out.printf ("Candidates : %s%n", candidates);
 
-    if (fileSystems.size () == soFar)
-      getProdos (blockReader);
+    startProbes (blockReader);        // only when there is a probe executor
 
-    if (fileSystems.size () == soFar)
-      getCpm (blockReader);
+    try
+    {
+      // DOS can be a hybrid with Pascal, Prodos or CPM
+      addFileSystem (probe (Group.DOS, blockReader));
+      addFileSystem (probe (Group.OTHER, blockReader));
 
-    if (fileSystems.size () == 0)         // these file systems cannot be hybrids
-      getDos31 (blockReader);
-    if (fileSystems.size () == 0)
-      getCpm2 (blockReader);
-    if (fileSystems.size () == 0)
-      getLbr (blockReader);
-    if (fileSystems.size () == 0)
-      getNuFx (blockReader);
-    if (fileSystems.size () == 0)
-      getBinary2 (blockReader);
-    if (fileSystems.size () == 0)
-      getZip (blockReader);
-    if (fileSystems.size () == 0)
-      getGZip (blockReader);
-    if (fileSystems.size () == 0)
-      getUnidos (blockReader);
-    if (fileSystems.size () == 0)
-      getWoz (blockReader);
+      if (fileSystems.size () == 0)
+        addFileSystem (probe (Group.SINGLE, blockReader));
+    }
+    finally
+    {
+      stopProbes ();
+    }
 
     for (AppleFileSystem fs : fileSystems)
       fs.setDiskHeaders (diskHeaders);
@@ -143,8 +242,15 @@ public class FileSystemFactory
       case 0:
         blockReader.setParameters (dos1);
         AppleFileSystem fs = new FsData (blockReader);
-        if (errorMessages.size () > 0)
-          fs.setErrorMessage (errorMessages.get (0));
+
+        // report the first file system that was recognised but could not be read
+        for (ProbeResult probeResult : probeResults.values ())
+          if (probeResult.getStatus () == ProbeResult.Status.PARTIAL)
+          {
+            fs.setErrorMessage (probeResult.getReason ());
+            break;
+          }
+
         return fs;
 
       case 1:
@@ -155,476 +261,236 @@ public class FileSystemFactory
     }
   }
 
+  // The result of every probe that getFileSystem() consulted, in priority order.
+  // Useful for finding out why a disk was not recognised.
   // ---------------------------------------------------------------------------------//
-  public String getSuffix (String name)
+  public List<ProbeResult> getProbeResults ()
   // ---------------------------------------------------------------------------------//
   {
-    return Utility.getSuffix (name);
+    return probeResults == null ? List.of () : List.copyOf (probeResults.values ());
   }
 
+  // Work out what getFileSystem() would return by reading only the boot, VTOC, volume
+  // directory or magic bytes. No catalogs are read and embedded file systems are not
+  // looked for. The file is always memory mapped, so only those few blocks are read.
   // ---------------------------------------------------------------------------------//
-  public int getSuffixNumber (String name)
+  public FileSystemIdentity identify (Path path)
   // ---------------------------------------------------------------------------------//
   {
-    return Utility.getSuffixNo (name);
+    if (!path.toFile ().exists ())
+      throw new FileFormatException (String.format ("Path %s does not exist%n", path));
+
+    return identify (new BlockReader (path, true));
   }
 
   // ---------------------------------------------------------------------------------//
-  public List<String> getSuffixes ()
+  public FileSystemIdentity identify (String name, byte[] buffer)
   // ---------------------------------------------------------------------------------//
   {
-    return Utility.getSuffixes ();
+    return identify (new BlockReader (name, buffer));
   }
 
   // ---------------------------------------------------------------------------------//
-  public int getSuffixesSize ()
+  public FileSystemIdentity identify (BlockReader blockReader)
   // ---------------------------------------------------------------------------------//
   {
-    return Utility.getSuffixes ().size ();
+    Objects.requireNonNull (blockReader);
+
+    List<DiskHeader> diskHeaders = new ArrayList<> ();
+    blockReader = skipDiskHeaders (blockReader, diskHeaders);
+
+    return new FileSystemIdentity (diskHeaders,
+        new FileSystemIdentifier (blockReader).identify ());
   }
 
+  // keep checking for disk headers until there are none
   // ---------------------------------------------------------------------------------//
-  private void getDos31 (BlockReader blockReader)
+  private BlockReader skipDiskHeaders (BlockReader blockReader,
+      List<DiskHeader> diskHeaders)
   // ---------------------------------------------------------------------------------//
   {
-    if (blockReader.getDiskBuffer ().length () == SECTOR_35_13_SIZE)
+    while (true)
     {
-      try
+      if (DiskHeader2img.isValid (blockReader))
       {
-        BlockReader dos31Reader = new BlockReader (blockReader);
-        dos31Reader.setParameters (dos31);
-
-        FsDos3 fs = new FsDos3 (dos31Reader);
-
-        if (fs.getTotalCatalogBlocks () > 0)
-        {
-          fs.readCatalogBlocks ();
-          fileSystems.add (fs);
-        }
+        DiskHeader diskHeader = new DiskHeader2img (blockReader);
+        blockReader = diskHeader.getBlockReader ();
+        diskHeaders.add (diskHeader);
+        continue;
       }
-      catch (FileFormatException e)
+
+      if (DiskHeaderDiskCopy.isValid (blockReader))
       {
-        if (debug)
-          System.out.println (e);
+        DiskHeader diskHeader = new DiskHeaderDiskCopy (blockReader);
+        blockReader = diskHeader.getBlockReader ();
+        diskHeaders.add (diskHeader);
+        continue;
       }
+
+      return blockReader;
     }
   }
 
   // ---------------------------------------------------------------------------------//
-  private void getDos33 (BlockReader blockReader)
+  private void addFileSystem (AppleFileSystem fs)
   // ---------------------------------------------------------------------------------//
   {
-    if (debug)
-      System.out.println ("Checking Dos33");
-
-    List<FsDos3> fsList = new ArrayList<> (2);
-
-    if (blockReader.getDiskBuffer ().length () == SECTOR_35_16_SIZE)
-      for (int i = 0; i < 2; i++)
-        try
-        {
-          BlockReader dos33Reader = new BlockReader (blockReader);
-          dos33Reader.setParameters (i == 0 ? dos1 : dos2);
-
-          FsDos3 fs = new FsDos3 (dos33Reader);
-
-          if (debug)
-            System.out.printf ("Found %d catalog blocks%n", fs.getTotalCatalogBlocks ());
-
-          if (fs.getTotalCatalogBlocks () > 0)
-          {
-            fsList.add (fs);
-            if (fs.getTotalCatalogBlocks () >= 15)        // best possible result
-              break;
-          }
-        }
-        catch (FileFormatException e)
-        {
-          if (debug)
-            System.out.println (e);
-        }
-
-    if (debug)
-      System.out.println ("Tried both interleaves - found " + fsList.size ());
-
-    switch (fsList.size ())
-    {
-      case 1:
-        FsDos3 fs = fsList.get (0);
-        fileSystems.add (fs);
-        fs.readCatalogBlocks ();
-        break;
-
-      case 2:
-        FsDos3 fs0 = fsList.get (0);
-        FsDos3 fs1 = fsList.get (1);
-
-        if (fs0.getTotalCatalogBlocks () > fs1.getTotalCatalogBlocks ())
-        {
-          fileSystems.add (fs0);
-          fs0.readCatalogBlocks ();
-        }
-        else
-        {
-          fileSystems.add (fs1);
-          fs1.readCatalogBlocks ();
-        }
-    }
-
-    if (debug)
-      System.out.println ("Finished Dos33");
+    if (fs != null)
+      fileSystems.add (fs);
   }
 
   // ---------------------------------------------------------------------------------//
-  private void getDos4 (BlockReader blockReader)
+  private void startProbes (BlockReader blockReader)
   // ---------------------------------------------------------------------------------//
   {
-    if (debug)
-      System.out.println ("Checking Dos4");
-
-    try
-    {
-      BlockReader dos4Reader = new BlockReader (blockReader);
-
-      switch (blockReader.getDiskBuffer ().length ())
-      {
-        case SECTOR_35_16_SIZE:
-        case SECTOR_40_16_SIZE:
-        case SECTOR_48_16_SIZE:
-          dos4Reader.setParameters (dos1);
-          break;
-
-        case SECTOR_35_32_SIZE:
-        case SECTOR_40_32_SIZE:
-        case SECTOR_48_32_SIZE:
-          dos4Reader.setParameters (dos4);
-          break;
-
-        default:
-          return;
-      }
+    if (probeExecutor == null)
+      return;
 
-      FsDos4 fs = new FsDos4 (dos4Reader);
+    runningProbes = new HashMap<> ();
 
-      if (fs.getTotalCatalogBlocks () > 0)
-      {
-        fileSystems.add (fs);
-        fs.readCatalogBlocks ();
-      }
-    }
-    catch (FileFormatException e)
-    {
-      if (debug)
-        System.out.println (e);
-    }
+    for (ProbeDescriptor probe : candidates)
+      runningProbes.put (probe, CompletableFuture
+          .supplyAsync (() -> runProbe (probe, blockReader), probeExecutor));
   }
 
+  // Any probe whose result was never needed is abandoned. One that is already running
+  // only reads the disk, so it is simply left to finish.
   // ---------------------------------------------------------------------------------//
-  private void getUnidos (BlockReader blockReader)
+  private void stopProbes ()
   // ---------------------------------------------------------------------------------//
   {
-    if (blockReader.getDiskBuffer ().length () == UNIDOS_SIZE)
-      try
-      {
-        BlockReader unidosReader = new BlockReader (blockReader);
-        unidosReader.setParameters (dos4);
+    if (runningProbes == null)
+      return;
 
-        FsUnidos fs = new FsUnidos (unidosReader);
+    for (CompletableFuture<ProbeResult> future : runningProbes.values ())
+      future.cancel (false);
 
-        if (fs.getFileSystems ().size () == 2)  // should be exactly 2 dos file systems
-          fileSystems.add (fs);
-      }
-      catch (FileFormatException e)
-      {
-        if (debug)
-          System.out.println (e);
-      }
+    runningProbes = null;
   }
 
+  // Every probe whose constraint accepts the disk (the disk's length, magic number or
+  // a few signature bytes), or only the probes that matched last time. Every other
+  // probe would reject the disk straight away, so it is never run. The list is in the
+  // probes' priority order.
   // ---------------------------------------------------------------------------------//
-  private void getProdos (BlockReader blockReader)
+  private List<ProbeDescriptor> getCandidates (BlockReader blockReader)
   // ---------------------------------------------------------------------------------//
   {
-    Buffer buffer = blockReader.getDiskBuffer ();
-    if (debug)
-      System.out.printf ("Checking Prodos (size %,d)%n", buffer.length ());
+    List<ProbeDescriptor> candidates = new ArrayList<> ();
 
-    // should check for common HD sizes
-    if (buffer.length () < SECTOR_35_16_SIZE)
-      return;
+    for (ProbeDescriptor probe : probes)
+      if (cachedProbes != null ? cachedProbes.contains (probe.name ())
+          : probe.constraint ().test (blockReader))
+        candidates.add (probe);
 
-    for (int i = 0; i < 2; i++)
-      try
-      {
-        BlockReader prodosReader = new BlockReader (blockReader);
-        prodosReader.setParameters (i == 0 ? prodos1 : prodos2);
-
-        FsProdos fs = new FsProdos (prodosReader);
-
-        if (fs.getTotalCatalogBlocks () > 0)
-        {
-          fileSystems.add (fs);
-          if (debug)
-            System.out.println ("Adding Prodos");
-          break;
-        }
-      }
-      catch (FileFormatException e)
-      {
-        if (debug)
-          System.out.println (e);
-      }
+    return candidates;
   }
 
+  // The highest priority file system in the group. The candidates are tried in the
+  // registry's order, and once one matches only those of a higher priority are still
+  // worth trying.
   // ---------------------------------------------------------------------------------//
-  private void getPascal (BlockReader blockReader)
+  private AppleFileSystem probe (Group group, BlockReader blockReader)
   // ---------------------------------------------------------------------------------//
   {
-    if (debug)
-      System.out.println ("Checking Pascal");
+    List<ProbeDescriptor> groupCandidates = new ArrayList<> ();
 
-    // should check for common HD sizes
-    if (blockReader.getDiskBuffer ().length () >= SECTOR_35_16_SIZE)
-      for (int i = 0; i < 2; i++)
-        try
-        {
-          if (debug)
-            System.out.printf ("Pascal attempt %d%n", i);
-          BlockReader pascalReader = new BlockReader (blockReader);
-          pascalReader.setParameters (i == 0 ? prodos1 : prodos2);
+    for (ProbeDescriptor probe : candidates)
+      if (probe.group () == group)
+        groupCandidates.add (probe);
 
-          FsPascal fs = new FsPascal (pascalReader);
-
-          if (fs.getTotalCatalogBlocks () > 0)
-          {
-            fileSystems.add (fs);
-            if (debug)
-              System.out.println ("Adding Pascal");
-            break;
-          }
-        }
-        catch (FileFormatException e)
-        {
-          if (debug)
-            System.out.println (e);
-        }
-  }
+    ProbeDescriptor bestProbe = null;
+    AppleFileSystem bestFs = null;
 
-  // ---------------------------------------------------------------------------------//
-  private void getCpm (BlockReader blockReader)
-  // ---------------------------------------------------------------------------------//
-  {
-    if (debug)
-      System.out.println ("Checking CPM");
+    for (ProbeDescriptor probe : probeRegistry.getOrder (groupCandidates))
+    {
+      if (bestProbe != null && probes.indexOf (probe) > probes.indexOf (bestProbe))
+        continue;
 
-    if (blockReader.getDiskBuffer ().length () == SECTOR_35_16_SIZE)
-      try
+      AppleFileSystem fs = probe (probe, blockReader);
+      if (fs != null)
       {
-        BlockReader cpmReader = new BlockReader (blockReader);
-        cpmReader.setParameters (cpm);
+        bestProbe = probe;
+        bestFs = fs;
+      }
+    }
 
-        FsCpm fs = new FsCpm (cpmReader);
+    if (bestFs != null)
+      detections.add (new Detection (bestProbe.name (), bestFs.getFileSystemType (),
+          bestFs.getBlockReader ().getDiskParameters ()));
 
-        if (fs.getTotalCatalogBlocks () > 0)
-          fileSystems.add (fs);
-      }
-      catch (FileFormatException e)
-      {
-        if (debug)
-          System.out.println (e);
-      }
+    return bestFs;
   }
 
-  // this is not fully working yet
+  // Wait for the probe's result, or run it now if the probes are not concurrent, and
+  // keep it in probeResults. Returns the file system if the probe found one. An
+  // exception is only thrown for a probe whose result is needed, just as it would be
+  // when they run one after the other.
   // ---------------------------------------------------------------------------------//
-  private void getCpm2 (BlockReader blockReader)
+  private AppleFileSystem probe (ProbeDescriptor probe, BlockReader blockReader)
   // ---------------------------------------------------------------------------------//
   {
-    if (blockReader.getDiskBuffer ().length () == CPAM_SIZE)
+    ProbeResult probeResult;
+
+    if (runningProbes == null)
+      probeResult = runProbe (probe, blockReader);
+    else
       try
       {
-        BlockReader cpamReader = new BlockReader (blockReader);
-        cpamReader.setParameters (cpam);
-
-        FsCpm fs = new FsCpm (cpamReader);
-
-        if (fs.getTotalCatalogBlocks () > 0)
-          fileSystems.add (fs);
+        probeResult = runningProbes.get (probe).join ();
       }
-      catch (FileFormatException e)
+      catch (CompletionException e)
       {
-        if (debug)
-          System.out.println (e);
+        if (e.getCause () instanceof RuntimeException runtimeException)
+          throw runtimeException;
+        if (e.getCause () instanceof Error error)
+          throw error;
+        throw e;
       }
-  }
-
-  // ---------------------------------------------------------------------------------//
-  private void getLbr (BlockReader blockReader)
-  // ---------------------------------------------------------------------------------//
-  {
-    if (debug)
-      System.out.println ("Checking LBR");
-
-    try
-    {
-      BlockReader lbrReader = new BlockReader (blockReader);
-      lbrReader.setParameters (bin);
 
-      FsLbr fs = new FsLbr (lbrReader);
+    probeResults.put (probes.indexOf (probe), probeResult);
 
-      if (fs.getTotalCatalogBlocks () > 0)
-        fileSystems.add (fs);
-    }
-    catch (FileFormatException e)
-    {
-      if (debug)
-        System.out.println (e);
-    }
+    return probeResult.getFileSystem ();
   }
 
   // ---------------------------------------------------------------------------------//
-  private void getBinary2 (BlockReader blockReader)
+  private ProbeResult runProbe (ProbeDescriptor probe, BlockReader blockReader)
   // ---------------------------------------------------------------------------------//
   {
-    if (debug)
-      System.out.println ("Checking BIN2");
-
-    Buffer diskBuffer = blockReader.getDiskBuffer ();
-    if (diskBuffer.isMagic (0, FsBinary2.BIN2) && diskBuffer.byteAt (18, (byte) 0x02))
-      try
-      {
-        BlockReader lbrReader = new BlockReader (blockReader);
-        lbrReader.setParameters (bin);
+    long start = System.nanoTime ();
+    ProbeResult probeResult = probe.probe ().probe (blockReader);
 
-        if (debug)
-          System.out.println ("Bin2 magic OK");
+    probeRegistry.getStatistics ().record (probe.name (), probeResult.isMatch (),
+        System.nanoTime () - start);
 
-        FsBinary2 fs = new FsBinary2 (lbrReader);
-
-        if (fs.getFileSystems ().size () > 0 || fs.getFiles ().size () > 0)
-        {
-          fileSystems.add (fs);
-          if (debug)
-            System.out.println ("Adding Bin2");
-        }
-      }
-      catch (FileFormatException e)
-      {
-        if (debug)
-          System.out.println (e);
-      }
+    return probeResult;
   }
 
   // ---------------------------------------------------------------------------------//
-  private void getNuFx (BlockReader blockReader)
+  public String getSuffix (String name)
   // ---------------------------------------------------------------------------------//
   {
-    if (debug)
-      System.out.println ("Checking NuFX");
-
-    if (Utility.isMagic (blockReader.getDiskBuffer (), 0, FsNuFX.NuFile))
-      try
-      {
-        BlockReader nufxReader = new BlockReader (blockReader);
-        nufxReader.setParameters (bin);
-
-        FsNuFX fs = new FsNuFX (nufxReader);
-
-        if (fs.getFileSystems ().size () > 0 || fs.getFiles ().size () > 0)
-        {
-          fileSystems.add (fs);
-          if (debug)
-            System.out.println ("Adding NuFX");
-        }
-      }
-      catch (FileFormatException e)
-      {
-        if (debug)
-          System.out.println (e);
-      }
+    return Utility.getSuffix (name);
   }
 
   // ---------------------------------------------------------------------------------//
-  private void getZip (BlockReader blockReader)
+  public int getSuffixNumber (String name)
   // ---------------------------------------------------------------------------------//
   {
-    if (Utility.isMagic (blockReader.getDiskBuffer (), 0, FsZip.ZIP))
-      try
-      {
-        BlockReader lbrReader = new BlockReader (blockReader);
-        lbrReader.setParameters (bin);
-
-        FsZip fs = new FsZip (lbrReader);
-
-        if (fs.getFiles ().size () > 0 || fs.getFileSystems ().size () > 0)
-          fileSystems.add (fs);
-      }
-      catch (FileFormatException e)
-      {
-        if (debug)
-          System.out.println (e);
-      }
+    return Utility.getSuffixNo (name);
   }
 
   // ---------------------------------------------------------------------------------//
-  private void getGZip (BlockReader blockReader)
+  public List<String> getSuffixes ()
   // ---------------------------------------------------------------------------------//
   {
-    if (Utility.isMagic (blockReader.getDiskBuffer (), 0, FsGzip.GZIP))
-      try
-      {
-        BlockReader lbrReader = new BlockReader (blockReader);
-        lbrReader.setParameters (bin);
-
-        FsGzip fs = new FsGzip (lbrReader);
-
-        if (fs.getFiles ().size () > 0 || fs.getFileSystems ().size () > 0)
-          fileSystems.add (fs);
-      }
-      catch (FileFormatException e)
-      {
-        if (debug)
-          System.out.println (e);
-      }
+    return Utility.getSuffixes ();
   }
 
   // ---------------------------------------------------------------------------------//
-  private void getWoz (BlockReader blockReader)
+  public int getSuffixesSize ()
   // ---------------------------------------------------------------------------------//
   {
-    FileSystemType fileSystemType =
-        Utility.isMagic (blockReader.getDiskBuffer (), 0, FsWoz.WOZ_1)
-            ? FileSystemType.WOZ1
-            : Utility.isMagic (blockReader.getDiskBuffer (), 0, FsWoz.WOZ_2)
-                ? FileSystemType.WOZ2 : null;
-
-    if (fileSystemType == null)
-      return;
-
-    try
-    {
-      BlockReader lbrReader = new BlockReader (blockReader);
-      lbrReader.setParameters (bin);
-
-      FsWoz fs = new FsWoz (lbrReader, fileSystemType);
-
-      if (fs.getFileSystems ().size () > 0 || fs.getFiles ().size () > 0)
-        fileSystems.add (fs);
-    }
-    catch (Exception e)
-    {
-      if (debug)
-        System.out.println (e);
-
-      errorMessages.add (e.toString ());
-    }
+    return Utility.getSuffixes ().size ();
   }
-
-  //  search/1/t  FiLeStArTfIlEsTaRt  binscii (apple ][) text
-  //  string    \x0aGL            Binary II (apple ][) data
-  //  string    \x76\xff          Squeezed (apple ][) data
-  //  string    NuFile            NuFile archive (apple ][) data
-  //  string    N\xf5F\xe9l\xe5   NuFile archive (apple ][) data
-  //  belong    0x00051600        AppleSingle encoded Macintosh file
-  //  belong    0x00051607        AppleDouble encoded Macintosh file
 }
@@ -0,0 +1,439 @@
+package com.bytezone.filesystem;
+
+import static com.bytezone.filesystem.FileSystemFactory.bin;
+import static com.bytezone.filesystem.FileSystemFactory.cpam;
+import static com.bytezone.filesystem.FileSystemFactory.cpm;
+import static com.bytezone.filesystem.FileSystemFactory.dos1;
+import static com.bytezone.filesystem.FileSystemFactory.dos2;
+import static com.bytezone.filesystem.FileSystemFactory.dos31;
+import static com.bytezone.filesystem.FileSystemFactory.dos4;
+import static com.bytezone.filesystem.FileSystemFactory.prodos1;
+import static com.bytezone.filesystem.FileSystemFactory.prodos2;
+import static com.bytezone.filesystem.FileSystemIdentity.MAGIC;
+import static com.bytezone.filesystem.FileSystemIdentity.STRUCTURE;
+import static com.bytezone.filesystem.FileSystemIdentity.WEAK;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.bytezone.filesystem.AppleFileSystem.FileSystemType;
+import com.bytezone.filesystem.FileSystemIdentity.Match;
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// Works out what FileSystemFactory would build without building it. Each test reads
+// only the few blocks that the file system's constructor checks first (VTOC and
+// catalog chain, volume directory header, CP/M directory, magic bytes), straight from
+// the disk bytes, so no AppleBlocks or catalog entries are created. The tests are
+// made in the same order as FileSystemFactory.getFileSystem(). The header, VTOC and
+// directory entry checks are the constructors' own static checks.
+// -----------------------------------------------------------------------------------//
+class FileSystemIdentifier
+// -----------------------------------------------------------------------------------//
+{
+  private static final int SECTOR_SIZE = 256;
+
+  private static final int SECTOR_35_13_SIZE = 116_480;
+  private static final int SECTOR_35_16_SIZE = 143_360;
+  private static final int SECTOR_35_32_SIZE = 286_720;
+  private static final int SECTOR_40_16_SIZE = 163_840;
+  private static final int SECTOR_40_32_SIZE = 327_680;
+  private static final int SECTOR_48_16_SIZE = 196_608;
+  private static final int SECTOR_48_32_SIZE = 393_216;
+  private static final int UNIDOS_SIZE = 819_200;
+  private static final int CPAM_SIZE = 819_200;
+
+  private final BlockReader blockReader;
+  private final int diskLength;
+  private final Map<DiskParameters, DiskLayout> layouts = new ConcurrentHashMap<> ();
+
+  // ---------------------------------------------------------------------------------//
+  FileSystemIdentifier (BlockReader blockReader)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.blockReader = blockReader;
+    this.diskLength = blockReader.getDiskLength ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  List<Match> identify ()
+  // ---------------------------------------------------------------------------------//
+  {
+    List<Match> matches = new ArrayList<> ();
+
+    // DOS can be a hybrid with Prodos, CPM or Pascal
+    Match dos = dos33 ();
+    if (dos == null)
+      dos = dos4 ();
+    if (dos != null)
+      matches.add (dos);
+
+    Match other = pascal ();
+    if (other == null)
+      other = prodos ();
+    if (other == null)
+      other = cpm ();
+    if (other != null)
+      matches.add (other);
+
+    if (matches.isEmpty ())          // these file systems cannot be hybrids
+    {
+      Match match = dos31 ();
+      if (match == null)
+        match = cpm2 ();
+      if (match == null)
+        match = lbr ();
+      if (match == null)
+        match = magic ();
+      if (match == null)
+        match = unidos ();
+      if (match == null)
+        match = woz ();
+      if (match != null)
+        matches.add (match);
+    }
+
+    return matches;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  Match dos33 ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (diskLength != SECTOR_35_16_SIZE)
+      return null;
+
+    // same choice as FileSystemFactory.getDos33()
+    int total1 = countDos3CatalogSectors (dos1);
+    int total2 = total1 >= 15 ? 0 : countDos3CatalogSectors (dos2);
+
+    if (total1 == 0 && total2 == 0)
+      return null;
+
+    return new Match (FileSystemType.DOS3, total1 > total2 ? dos1 : dos2, STRUCTURE);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  Match dos31 ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (diskLength != SECTOR_35_13_SIZE || countDos3CatalogSectors (dos31) == 0)
+      return null;
+
+    return new Match (FileSystemType.DOS3, dos31, STRUCTURE);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  Match dos4 ()
+  // ---------------------------------------------------------------------------------//
+  {
+    DiskParameters diskParameters = switch (diskLength)
+    {
+      case SECTOR_35_16_SIZE, SECTOR_40_16_SIZE, SECTOR_48_16_SIZE -> dos1;
+      case SECTOR_35_32_SIZE, SECTOR_40_32_SIZE, SECTOR_48_32_SIZE -> dos4;
+      default -> null;
+    };
+
+    if (diskParameters == null)
+      return null;
+
+    byte[] vtoc = readSector (diskParameters, 17, 0);
+    if (vtoc == null || !passes (() -> FsDos4.checkVtoc (vtoc)))
+      return null;
+
+    // see FsDos4
+    BitSet catalogSectors = new BitSet ();
+    int track = vtoc[1] & 0xFF;
+    int sector = vtoc[2] & 0xFF;
+
+    while (track > 0)
+    {
+      track = FsDos4.catalogTrack (track);
+      sector = FsDos4.catalogSector (sector);
+
+      byte[] buffer = readSector (diskParameters, track, sector);
+      int blockNo = track * diskParameters.blocksPerTrack () + sector;
+
+      if (buffer == null || catalogSectors.get (blockNo))
+        return null;
+
+      catalogSectors.set (blockNo);
+      track = buffer[1] & 0xFF;
+      sector = buffer[2] & 0xFF;
+    }
+
+    if (catalogSectors.isEmpty ())
+      return null;
+
+    return new Match (FileSystemType.DOS4, diskParameters, STRUCTURE);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  Match unidos ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (diskLength != UNIDOS_SIZE)
+      return null;
+
+    // two DOS 3.3 disks of 400K each, see FsUnidos
+    int halfLength = UNIDOS_SIZE / 2;
+
+    for (int diskOffset = 0; diskOffset < UNIDOS_SIZE; diskOffset += halfLength)
+    {
+      BlockReader halfReader = new BlockReader (blockReader, diskOffset, halfLength);
+
+      if (new FileSystemIdentifier (halfReader).countDos3CatalogSectors (dos4) == 0)
+        return null;
+    }
+
+    return new Match (FileSystemType.UNIDOS, dos4, STRUCTURE);
+  }
+
+  // The number of catalog sectors that FsDos3 would find, or 0 if it would fail
+  // ---------------------------------------------------------------------------------//
+  private int countDos3CatalogSectors (DiskParameters diskParameters)
+  // ---------------------------------------------------------------------------------//
+  {
+    byte[] vtoc = readSector (diskParameters, 17, 0);
+    if (vtoc == null || !passes (() -> FsDos3.checkVtoc (vtoc)))
+      return 0;
+
+    int blocksPerTrack = diskParameters.blocksPerTrack ();
+    int sectorsPerTrack = vtoc[0x35] & 0xFF;
+    BitSet volumeBitMap =
+        FsDos.getVolumeBitMap (vtoc, blocksPerTrack, getTotalBlocks (diskParameters));
+
+    BitSet catalogSectors = new BitSet ();
+    int track = vtoc[1] & 0xFF;
+    int sector = vtoc[2] & 0xFF;
+
+    while (FsDos.validCatalogSector (volumeBitMap, sectorsPerTrack, track, sector))
+    {
+      byte[] buffer = readSector (diskParameters, track, sector);
+      int blockNo = track * blocksPerTrack + sector;
+
+      if (buffer == null || catalogSectors.get (blockNo))
+        return 0;
+
+      catalogSectors.set (blockNo);
+      track = buffer[1] & 0xFF;
+      sector = buffer[2] & 0xFF;
+    }
+
+    return catalogSectors.cardinality ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  Match prodos ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (diskLength < SECTOR_35_16_SIZE)
+      return null;
+
+    for (DiskParameters diskParameters : List.of (prodos1, prodos2))
+    {
+      byte[] buffer = readBlock (diskParameters, 2);
+
+      if (!passes (() -> DirectoryHeaderProdos.checkEntrySize (buffer)))
+        continue;
+
+      if (!validProdosCatalog (diskParameters))
+        continue;
+
+      int storageType = (buffer[0x04] & 0xF0) >>> 4;
+
+      return new Match (FileSystemType.PRODOS, diskParameters,
+          storageType == 0x0F ? STRUCTURE : WEAK);
+    }
+
+    return null;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private boolean validProdosCatalog (DiskParameters diskParameters)
+  // ---------------------------------------------------------------------------------//
+  {
+    int totalBlocks = getTotalBlocks (diskParameters);
+    int nextBlockNo = 2;
+
+    for (int count = 0; nextBlockNo != 0 && count < 1000; count++)
+    {
+      byte[] buffer = readBlock (diskParameters, nextBlockNo);
+
+      int prevBlockNo = Utility.unsignedShort (buffer, 0);
+      nextBlockNo = Utility.unsignedShort (buffer, 2);
+
+      if (prevBlockNo >= totalBlocks || nextBlockNo >= totalBlocks)
+        return false;
+    }
+
+    return true;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  Match pascal ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (diskLength < SECTOR_35_16_SIZE)
+      return null;
+
+    for (DiskParameters diskParameters : List.of (prodos1, prodos2))
+    {
+      byte[] buffer = readBlock (diskParameters, 2);
+
+      if (passes (() -> CatalogEntryPascal.checkVolumeHeaderFormat (buffer)))
+        return new Match (FileSystemType.PASCAL, diskParameters, STRUCTURE);
+    }
+
+    return null;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  Match cpm ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (diskLength != SECTOR_35_16_SIZE)
+      return null;
+
+    return cpmDirectory (cpm);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  Match cpm2 ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (diskLength != CPAM_SIZE)
+      return null;
+
+    return cpmDirectory (cpam);
+  }
+
+  // FsCpm only counts the first directory block if every entry in it is valid
+  // ---------------------------------------------------------------------------------//
+  private Match cpmDirectory (DiskParameters diskParameters)
+  // ---------------------------------------------------------------------------------//
+  {
+    byte[] buffer = readBlock (diskParameters, FsCpm.getDirectoryBlock (diskLength));
+    int totalEntries = 0;
+
+    for (int ptr = 0; ptr < buffer.length; ptr += 32)
+    {
+      if (FsCpm.isEmptyEntry (buffer, ptr))
+        continue;
+
+      if (!FsCpm.isValidEntry (buffer, ptr))
+        return null;
+
+      ++totalEntries;
+    }
+
+    return new Match (FileSystemType.CPM, diskParameters,
+        totalEntries > 0 ? STRUCTURE : WEAK);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  Match lbr ()
+  // ---------------------------------------------------------------------------------//
+  {
+    // see FsLbr, the first entry describes the directory itself
+    byte[] buffer = blockReader.readBytes (0, 32);
+
+    if (!passes (() -> FsLbr.checkHeader (buffer)))
+      return null;
+
+    return new Match (FileSystemType.LBR, bin, WEAK);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private Match magic ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (blockReader.isMagic (0, FsNuFX.NuFile))
+      return new Match (FileSystemType.NUFX, bin, MAGIC);
+
+    if (blockReader.isMagic (0, FsBinary2.BIN2) && blockReader.byteAt (18, (byte) 0x02))
+      return new Match (FileSystemType.BIN2, bin, MAGIC);
+
+    if (blockReader.isMagic (0, FsZip.ZIP))
+      return new Match (FileSystemType.ZIP, bin, MAGIC);
+
+    if (blockReader.isMagic (0, FsGzip.GZIP))
+      return new Match (FileSystemType.GZIP, bin, MAGIC);
+
+    return null;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private Match woz ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if (blockReader.isMagic (0, FsWoz.WOZ_1))
+      return new Match (FileSystemType.WOZ1, bin, MAGIC);
+
+    if (blockReader.isMagic (0, FsWoz.WOZ_2))
+      return new Match (FileSystemType.WOZ2, bin, MAGIC);
+
+    return null;
+  }
+
+  // the constructors' checks throw a FileFormatException (which has no stack trace)
+  // ---------------------------------------------------------------------------------//
+  private static boolean passes (Runnable check)
+  // ---------------------------------------------------------------------------------//
+  {
+    try
+    {
+      check.run ();
+      return true;
+    }
+    catch (FileFormatException e)
+    {
+      return false;
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private int getTotalBlocks (DiskParameters diskParameters)
+  // ---------------------------------------------------------------------------------//
+  {
+    return (diskLength - 1) / diskParameters.bytesPerBlock () + 1;
+  }
+
+  // null if the track and sector are not on the disk (see BlockReader.isValidAddress())
+  // ---------------------------------------------------------------------------------//
+  private byte[] readSector (DiskParameters diskParameters, int track, int sector)
+  // ---------------------------------------------------------------------------------//
+  {
+    int blocksPerTrack = diskParameters.blocksPerTrack ();
+    int blockNo = track * blocksPerTrack + sector;
+
+    if (sector >= blocksPerTrack || blockNo >= getTotalBlocks (diskParameters))
+      return null;
+
+    return readBlock (diskParameters, blockNo);
+  }
+
+  // Read a block the same way the ByteCopiers do, one 256-byte sector at a time
+  // ---------------------------------------------------------------------------------//
+  private byte[] readBlock (DiskParameters diskParameters, int blockNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    int blockSize = diskParameters.bytesPerBlock ();
+    DiskLayout diskLayout = layouts.computeIfAbsent (diskParameters,
+        p -> new DiskLayout (p, getTotalBlocks (p) * p.bytesPerBlock ()));
+
+    byte[] buffer = new byte[blockSize];
+
+    for (int ptr = 0; ptr < blockSize; ptr += SECTOR_SIZE)
+    {
+      int offset = diskLayout.getOffset (blockNo * blockSize + ptr);
+      byte[] sector = blockReader.readBytes (offset, SECTOR_SIZE);
+      System.arraycopy (sector, 0, buffer, ptr, Math.min (SECTOR_SIZE, blockSize - ptr));
+    }
+
+    return buffer;
+  }
+}
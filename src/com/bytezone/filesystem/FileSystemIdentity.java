@@ -0,0 +1,126 @@
+package com.bytezone.filesystem;
+
+import static com.bytezone.utility.Utility.formatText;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bytezone.filesystem.AppleFileSystem.FileSystemType;
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// What FileSystemFactory.identify() thinks an image is. Only the boot, VTOC, volume
+// directory or magic bytes were read, so nothing here has been fully validated. Each
+// match has a confidence from 0 to 100, a hybrid disk has more than one match.
+// -----------------------------------------------------------------------------------//
+public class FileSystemIdentity
+// -----------------------------------------------------------------------------------//
+{
+  public static final int MAGIC = 90;           // an archive's magic number
+  public static final int STRUCTURE = 80;       // a valid catalog header and chain
+  public static final int WEAK = 50;            // eg an empty CP/M directory
+
+  private final List<DiskHeader> diskHeaders;
+  private final List<Match> matches;
+
+  // ---------------------------------------------------------------------------------//
+  public record Match (FileSystemType fileSystemType, DiskParameters diskParameters,
+      int confidence)
+  // ---------------------------------------------------------------------------------//
+  {
+  }
+
+  // ---------------------------------------------------------------------------------//
+  FileSystemIdentity (List<DiskHeader> diskHeaders, List<Match> matches)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.diskHeaders = List.copyOf (diskHeaders);
+    this.matches = List.copyOf (matches);
+  }
+
+  // the same type that FileSystemFactory.getFileSystem() should return
+  // ---------------------------------------------------------------------------------//
+  public FileSystemType getFileSystemType ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return switch (matches.size ())
+    {
+      case 0 -> FileSystemType.DATA;
+      case 1 -> matches.get (0).fileSystemType ();
+      default -> FileSystemType.HYBRID;
+    };
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public List<FileSystemType> getFileSystemTypes ()
+  // ---------------------------------------------------------------------------------//
+  {
+    List<FileSystemType> fileSystemTypes = new ArrayList<> ();
+
+    for (Match match : matches)
+      fileSystemTypes.add (match.fileSystemType ());
+
+    return fileSystemTypes;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public List<Match> getMatches ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return matches;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public List<DiskHeader> getDiskHeaders ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskHeaders;
+  }
+
+  // of the first match, null if nothing was recognised
+  // ---------------------------------------------------------------------------------//
+  public DiskParameters getDiskParameters ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return matches.isEmpty () ? null : matches.get (0).diskParameters ();
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public int getInterleave ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return matches.isEmpty () ? 0 : matches.get (0).diskParameters ().interleave ();
+  }
+
+  // the lowest confidence of all the matches, 0 if nothing was recognised
+  // ---------------------------------------------------------------------------------//
+  public int getConfidence ()
+  // ---------------------------------------------------------------------------------//
+  {
+    int confidence = matches.isEmpty () ? 0 : 100;
+
+    for (Match match : matches)
+      confidence = Math.min (confidence, match.confidence ());
+
+    return confidence;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public String toString ()
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+
+    formatText (text, "File system type", getFileSystemType ().toString ());
+    formatText (text, "Confidence", 3, getConfidence ());
+    formatText (text, "Interleave", 2, getInterleave ());
+    formatText (text, "Disk headers", 2, diskHeaders.size ());
+
+    for (Match match : matches)
+      formatText (text, "Match", String.format ("%3d", match.confidence ()),
+          match.fileSystemType ().toString ());
+
+    return Utility.rtrim (text);
+  }
+}
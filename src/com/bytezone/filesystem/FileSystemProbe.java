@@ -0,0 +1,14 @@
+package com.bytezone.filesystem;
+
+// -----------------------------------------------------------------------------------//
+// Checks whether a disk holds one particular kind of file system. A probe must not
+// throw when the disk is something else, it returns ProbeResult.noMatch() with the
+// reason. The BlockReader is shared by every probe, so each probe must make its own
+// copy (new BlockReader (blockReader)) before setting any DiskParameters.
+// -----------------------------------------------------------------------------------//
+@FunctionalInterface
+public interface FileSystemProbe
+// -----------------------------------------------------------------------------------//
+{
+  ProbeResult probe (BlockReader blockReader);
+}
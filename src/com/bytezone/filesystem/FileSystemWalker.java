@@ -0,0 +1,179 @@
+package com.bytezone.filesystem;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+// -----------------------------------------------------------------------------------//
+// Visits everything inside a file system, depth first and in catalog order: the file
+// system itself, its folders, files and forks, and every file system inside those
+// (embedded disks and archives, hybrid and Unidos halves etc). Each node has a path
+// made of the names from the top file system down, separated by '/'. The path of an
+// embedded file system is the path of the file that holds it. File systems that are
+// not inside a file (eg the two halves of a hybrid) are named #1, #2 and so on.
+// -----------------------------------------------------------------------------------//
+public class FileSystemWalker
+// -----------------------------------------------------------------------------------//
+{
+  private boolean embedded = true;
+
+  public enum Kind
+  {
+    FILE_SYSTEM, FOLDER, FILE, FORK
+  }
+
+  // The file is null for a FILE_SYSTEM that is not embedded in a file. Otherwise the
+  // file system is the one the file belongs to (or is embedded in).
+  // ---------------------------------------------------------------------------------//
+  public record Node (Kind kind, String path, int depth, AppleFileSystem fileSystem,
+      AppleFile file)
+  // ---------------------------------------------------------------------------------//
+  {
+  }
+
+  // Whether to open embedded file systems. Reading them may mean decompressing the
+  // file that holds them, so a walk that only wants the catalogs can leave them out.
+  // ---------------------------------------------------------------------------------//
+  public void setEmbedded (boolean embedded)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.embedded = embedded;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public void walk (AppleFileSystem fileSystem, Consumer<Node> visitor)
+  // ---------------------------------------------------------------------------------//
+  {
+    visitor.accept (new Node (Kind.FILE_SYSTEM, "", 0, fileSystem, null));
+    walk (fileSystem, fileSystem, "", 1, visitor);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private void walk (AppleFileSystem fileSystem, AppleContainer container, String path,
+      int depth, Consumer<Node> visitor)
+  // ---------------------------------------------------------------------------------//
+  {
+    for (AppleFile file : container.getFiles ())
+    {
+      String filePath = join (path, file.getFileName ());
+      Kind kind = file.isFolder () ? Kind.FOLDER : file.isFork () ? Kind.FORK : Kind.FILE;
+
+      visitor.accept (new Node (kind, filePath, depth, fileSystem, file));
+
+      for (AppleFile fork : getForks (file))
+        visitor.accept (new Node (Kind.FORK, join (filePath, fork.getFileName ()),
+            depth + 1, fileSystem, fork));
+
+      if (file instanceof AppleContainer folder)
+        walk (fileSystem, folder, filePath, depth + 1, visitor);
+
+      if (embedded && file.hasEmbeddedFileSystem ())
+        for (AppleFileSystem embeddedFs : file.getEmbeddedFileSystems ())
+        {
+          visitor.accept (new Node (Kind.FILE_SYSTEM, filePath, depth + 1, embeddedFs,
+              file));
+          walk (embeddedFs, embeddedFs, filePath, depth + 2, visitor);
+        }
+    }
+
+    List<AppleFileSystem> fileSystems = container.getFileSystems ();
+    if (fileSystems == null)
+      return;
+
+    for (int i = 0; i < fileSystems.size (); i++)
+    {
+      AppleFileSystem childFs = fileSystems.get (i);
+      String childPath = join (path, "#" + (i + 1));
+
+      visitor.accept (new Node (Kind.FILE_SYSTEM, childPath, depth, childFs, null));
+      walk (childFs, childFs, childPath, depth + 1, visitor);
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static List<AppleFile> getForks (AppleFile file)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (!file.isForkedFile ())
+      return List.of ();
+
+    if (file instanceof AppleForkedFile forkedFile)
+      return forkedFile.getForks ();
+
+    if (file instanceof FileProdos fileProdos)
+      return fileProdos.getForks ();
+
+    return List.of ();
+  }
+
+  // The file's contents as they would be copied off the disk. Random-access files keep
+  // every block, as their records can be anywhere. Some files only apply the eof to
+  // getFileLength(), so the buffer is cut to that.
+  // ---------------------------------------------------------------------------------//
+  static Buffer getContents (AppleFile file)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (file.isRandomAccess ())
+      return file.getRawFileBuffer ();
+
+    Buffer buffer = file.getFileBuffer ();
+    if (buffer == null || buffer.length () <= file.getFileLength ())
+      return buffer;
+
+    return new Buffer (buffer.data (), buffer.offset (), file.getFileLength ());
+  }
+
+  // only some file systems have aux types
+  // ---------------------------------------------------------------------------------//
+  static int getAuxType (AppleFile file)
+  // ---------------------------------------------------------------------------------//
+  {
+    try
+    {
+      return file.getAuxType ();
+    }
+    catch (UnsupportedOperationException e)
+    {
+      return 0;
+    }
+  }
+
+  // ProDOS and NuFX files and ProDOS folders have both dates, Pascal files only have
+  // a modified date
+  // ---------------------------------------------------------------------------------//
+  static LocalDateTime getCreated (AppleFile file)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (file instanceof FileProdos fileProdos)
+      return fileProdos.getCreated ();
+    if (file instanceof FolderProdos folderProdos)
+      return folderProdos.getCreated ();
+    if (file instanceof FileNuFX fileNuFX)
+      return fileNuFX.getCreated ();
+
+    return null;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static LocalDateTime getModified (AppleFile file)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (file instanceof FileProdos fileProdos)
+      return fileProdos.getModified ();
+    if (file instanceof FolderProdos folderProdos)
+      return folderProdos.getModified ();
+    if (file instanceof FileNuFX fileNuFX)
+      return fileNuFX.getModified ();
+    if (file instanceof FilePascal filePascal && filePascal.getDate () != null)
+      return filePascal.getDate ().atStartOfDay ();
+
+    return null;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static String join (String path, String name)
+  // ---------------------------------------------------------------------------------//
+  {
+    return path.isEmpty () ? name : path + "/" + name;
+  }
+}
@@ -11,20 +11,67 @@ import com.bytezone.utility.Utility;
 public class FileZip extends AbstractAppleFile implements AppleFilePath
 // -----------------------------------------------------------------------------------//
 {
+  private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;    // biggest array
+
   private final char separator = '/';
   private final ZipEntry zipEntry;
+  private final int dataPtr;              // compressed data in the zip, -1 if not known
+  private final int entryNo;              // used when dataPtr is not known
 
   String fileName;
 
   // ---------------------------------------------------------------------------------//
-  FileZip (FsZip fs, String fileName, byte[] buffer, ZipEntry zipEntry)
+  FileZip (FsZip fs, ZipEntry zipEntry, int dataPtr, int entryNo)
   // ---------------------------------------------------------------------------------//
   {
     super (fs);
 
-    rawFileBuffer = new Buffer (buffer, 0, buffer.length);
-    this.fileName = fileName;
+    this.fileName = zipEntry.getName ();
     this.zipEntry = zipEntry;
+    this.dataPtr = dataPtr;
+    this.entryNo = entryNo;
+  }
+
+  // the entry is only inflated when it is needed, see FsZip.inflate()
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public synchronized Buffer getRawFileBuffer ()
+  // ---------------------------------------------------------------------------------//
+  {
+    Buffer buffer = getRawFileBuffer (MAX_LENGTH);
+    if (buffer == null)
+      throw new FileFormatException ("Zip entry is too big: " + fileName);
+
+    return buffer;
+  }
+
+  // the size is known before inflating, unless the zip has no central directory
+  // ---------------------------------------------------------------------------------//
+  @Override
+  synchronized Buffer getRawFileBuffer (long maxBytes)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (rawFileBuffer == null)
+    {
+      if (zipEntry.getSize () > Math.min (maxBytes, MAX_LENGTH))
+        return null;
+
+      rawFileBuffer = ((FsZip) parentFileSystem).inflate (zipEntry, dataPtr, entryNo,
+          Math.min (maxBytes, MAX_LENGTH));
+    }
+
+    return rawFileBuffer == null || rawFileBuffer.length () > maxBytes ? null
+        : rawFileBuffer;
+  }
+
+  // it can be inflated again
+  // ---------------------------------------------------------------------------------//
+  @Override
+  synchronized void releaseFileBuffers ()
+  // ---------------------------------------------------------------------------------//
+  {
+    rawFileBuffer = null;
+    exactFileBuffer = null;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -81,7 +128,8 @@ public class FileZip extends AbstractAppleFile implements AppleFilePath
   public int getFileLength ()
   // ---------------------------------------------------------------------------------//
   {
-    return rawFileBuffer.length ();
+    long size = zipEntry.getSize ();
+    return size >= 0 ? (int) size : getRawFileBuffer ().length ();
   }
 
   // ---------------------------------------------------------------------------------//
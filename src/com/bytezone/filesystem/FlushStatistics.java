@@ -0,0 +1,71 @@
+package com.bytezone.filesystem;
+
+import static com.bytezone.utility.Utility.formatText;
+
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// Running totals of the dirty blocks that a BlockReader has written back. A run is a
+// group of dirty blocks that sit next to each other on the disk.
+// -----------------------------------------------------------------------------------//
+public class FlushStatistics
+// -----------------------------------------------------------------------------------//
+{
+  private long flushes;
+  private long blocks;
+  private long runs;
+  private long bytes;
+
+  // ---------------------------------------------------------------------------------//
+  void add (int blocks, int runs, int bytes)
+  // ---------------------------------------------------------------------------------//
+  {
+    ++flushes;
+    this.blocks += blocks;
+    this.runs += runs;
+    this.bytes += bytes;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public long getFlushes ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return flushes;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public long getBlocks ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return blocks;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public long getRuns ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return runs;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public long getBytes ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return bytes;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public String toString ()
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+
+    formatText (text, "Flushes", 8, (int) flushes);
+    formatText (text, "Blocks written", 8, (int) blocks);
+    formatText (text, "Runs written", 8, (int) runs);
+    formatText (text, "Bytes written", 8, (int) bytes);
+
+    return Utility.rtrim (text);
+  }
+}
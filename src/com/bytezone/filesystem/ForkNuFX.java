@@ -135,6 +135,33 @@ public class ForkNuFX extends AbstractAppleFile
     return rawFileBuffer;
   }
 
+  // ---------------------------------------------------------------------------------//
+  @Override
+  Buffer getRawFileBuffer (long maxBytes)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (rawFileBuffer == null)
+    {
+      byte[] buffer = thread.getData (maxBytes);
+      if (buffer == null)
+        return null;
+
+      rawFileBuffer = new Buffer (buffer, 0, buffer.length);
+    }
+
+    return rawFileBuffer.length () > maxBytes ? null : rawFileBuffer;
+  }
+
+  // the thread can always be decompressed again
+  // ---------------------------------------------------------------------------------//
+  @Override
+  void releaseFileBuffers ()
+  // ---------------------------------------------------------------------------------//
+  {
+    rawFileBuffer = null;
+    exactFileBuffer = null;
+  }
+
   // same data as rawFileBuffer, but with any offset or eof applied
   // ---------------------------------------------------------------------------------//
   @Override
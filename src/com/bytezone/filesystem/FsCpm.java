@@ -21,24 +21,27 @@ public class FsCpm extends AbstractFileSystem
   {
     super (blockReader, FileSystemType.CPM);
 
+    blockReader.setEmptyByte ((byte) EMPTY_BYTE_VALUE);
+
     int catalogBlocks = 0;
     int firstBlock = 0;
     int maxBlocks = 0;
     int blockAddressSize = 0;
 
-    if (getDiskBuffer ().length () == 143_360)
+    if (blockReader.getDiskLength () == 143_360)
     {
-      firstBlock = 12;            // track 3 x (4 blocks per track)
       maxBlocks = 2;              // 2 blocks (half a track)
       blockAddressSize = 8;       // 8 bits per block address
     }
-    else if (getDiskBuffer ().length () == 819_200)
+    else if (blockReader.getDiskLength () == 819_200)
     {
-      firstBlock = 16;            // track 4 x (4 blocks per track)
       maxBlocks = 8;              // 8 blocks (2 full tracks)
       blockAddressSize = 16;      // 16 bits per block address
     }
 
+    if (maxBlocks > 0)
+      firstBlock = getDirectoryBlock (blockReader.getDiskLength ());
+
     OUT: for (int i = 0; i < maxBlocks; i++)
     {
       AppleBlock block = getBlock (firstBlock + i, BlockType.FS_DATA);
@@ -47,17 +50,10 @@ public class FsCpm extends AbstractFileSystem
 
       for (int ptr = 0; ptr < buffer.length; ptr += 32)
       {
-        int b1 = buffer[ptr] & 0xFF;        // user number
-        if (b1 == EMPTY_BYTE_VALUE)         // deleted file??
+        if (isEmptyEntry (buffer, ptr))     // deleted file??
           continue;
 
-        if (b1 > 31)
-          //          throw new FileFormatException ("CPM: bad user number: " + b1);
-          break OUT;
-
-        int b2 = buffer[ptr + 1] & 0xFF;      // first letter of filename
-        if (b2 <= 32 || (b2 > 126 && b2 != EMPTY_BYTE_VALUE))
-          //          throw new FileFormatException ("CPM: bad name value");
+        if (!isValidEntry (buffer, ptr))
           break OUT;
 
         fileEntries.add (new CatalogEntryCpm (buffer, ptr, blockAddressSize));
@@ -98,6 +94,39 @@ public class FsCpm extends AbstractFileSystem
     }
   }
 
+  // the first directory block, -1 if the disk is not a CPM size
+  // ---------------------------------------------------------------------------------//
+  static int getDirectoryBlock (int diskLength)
+  // ---------------------------------------------------------------------------------//
+  {
+    return switch (diskLength)
+    {
+      case 143_360 -> 12;         // track 3 x (4 blocks per track)
+      case 819_200 -> 16;         // track 4 x (4 blocks per track)
+      default -> -1;
+    };
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static boolean isEmptyEntry (byte[] buffer, int ptr)
+  // ---------------------------------------------------------------------------------//
+  {
+    return (buffer[ptr] & 0xFF) == EMPTY_BYTE_VALUE;
+  }
+
+  // Checks the user number and the first letter of the file name. The directory ends
+  // at the first entry that fails. Also used by FileSystemIdentifier.
+  // ---------------------------------------------------------------------------------//
+  static boolean isValidEntry (byte[] buffer, int ptr)
+  // ---------------------------------------------------------------------------------//
+  {
+    int userNumber = buffer[ptr] & 0xFF;
+    int firstLetter = buffer[ptr + 1] & 0xFF;
+
+    return userNumber <= 31 && firstLetter > 32
+        && (firstLetter <= 126 || firstLetter == EMPTY_BYTE_VALUE);
+  }
+
   // ---------------------------------------------------------------------------------//
   @Override
   public String getCatalogText ()
@@ -141,6 +141,16 @@ public abstract class FsDos extends AbstractFileSystem
   // ---------------------------------------------------------------------------------//
   protected boolean validCatalogSector (int track, int sector)
   // ---------------------------------------------------------------------------------//
+  {
+    return validCatalogSector (volumeBitMap, sectorsPerTrack, track, sector);
+  }
+
+  // The catalog ends at track 0, or at a free sector. The sector is found using the
+  // VTOC's own sectors per track. Also used by FileSystemIdentifier.
+  // ---------------------------------------------------------------------------------//
+  static boolean validCatalogSector (BitSet volumeBitMap, int sectorsPerTrack, int track,
+      int sector)
+  // ---------------------------------------------------------------------------------//
   {
     return track > 0 && !volumeBitMap.get (track * sectorsPerTrack + sector);
   }
@@ -149,11 +159,18 @@ public abstract class FsDos extends AbstractFileSystem
   protected void createVolumeBitMap (byte[] buffer)
   // ---------------------------------------------------------------------------------//
   {
-    int blocksPerTrack = blockReader.getBlocksPerTrack ();
-    int totalBlocks = blockReader.getTotalBlocks ();
-    int totalTracks = totalBlocks / blocksPerTrack;
+    volumeBitMap = getVolumeBitMap (buffer, blockReader.getBlocksPerTrack (),
+        blockReader.getTotalBlocks ());
+    freeBlocks = volumeBitMap.cardinality ();
+  }
 
-    volumeBitMap = new BitSet (totalBlocks);
+  // a bit is set for every free sector in the VTOC, also used by FileSystemIdentifier
+  // ---------------------------------------------------------------------------------//
+  static BitSet getVolumeBitMap (byte[] buffer, int blocksPerTrack, int totalBlocks)
+  // ---------------------------------------------------------------------------------//
+  {
+    int totalTracks = totalBlocks / blocksPerTrack;
+    BitSet volumeBitMap = new BitSet (totalBlocks);
 
     int ptr = 0x38;
     for (int track = 0; track < totalTracks; track++)
@@ -168,7 +185,7 @@ public abstract class FsDos extends AbstractFileSystem
       ptr += 4;
     }
 
-    freeBlocks = volumeBitMap.cardinality ();
+    return volumeBitMap;
   }
 
   // ---------------------------------------------------------------------------------//
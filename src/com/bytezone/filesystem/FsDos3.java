@@ -32,10 +32,8 @@ public class FsDos3 extends FsDos
     int track = buffer[1] & 0xFF;
     int sector = buffer[2] & 0xFF;
 
+    checkVtoc (buffer);
     dosVersion = buffer[0x03] & 0xFF;
-    if (dosVersion < 0x01 || dosVersion > 0x04)     // some disks get this wrong
-      throw new FileFormatException (
-          String.format ("Dos3: version byte invalid: %02X", dosVersion));
 
     volumeNumber = buffer[0x06] & 0xFF;
     maxTSpairs = buffer[0x27] & 0xFF;
@@ -80,6 +78,17 @@ public class FsDos3 extends FsDos
       showDosBits ();
   }
 
+  // also used by FileSystemIdentifier
+  // ---------------------------------------------------------------------------------//
+  static void checkVtoc (byte[] buffer)
+  // ---------------------------------------------------------------------------------//
+  {
+    int dosVersion = buffer[0x03] & 0xFF;
+    if (dosVersion < 0x01 || dosVersion > 0x04)     // some disks get this wrong
+      throw new FileFormatException (
+          String.format ("Dos3: version byte invalid: %02X", dosVersion));
+  }
+
   // ---------------------------------------------------------------------------------//
   private void showDosBits ()
   // ---------------------------------------------------------------------------------//
@@ -47,10 +47,9 @@ class FsDos4 extends FsDos
     int track = buffer[1] & 0xFF;
     int sector = buffer[2] & 0xFF;
 
+    if (!debug)
+      checkVtoc (buffer);
     dosVersion = buffer[3] & 0xFF;
-    if ((dosVersion < 0x41 || dosVersion > 0x45) && !debug)
-      throw new FileFormatException (
-          String.format ("Dos4: version byte invalid: %02X", dosVersion));
 
     vtocStructureBlock = buffer[0] & 0xFF;
     buildNumber = buffer[0x04] & 0xFF;
@@ -78,8 +77,8 @@ class FsDos4 extends FsDos
     //    while (validCatalogSector (track, sector))
     while (track > 0)           // track needs zero flag for loop to work
     {
-      track &= 0x3F;            // remove deleted (0x80) and track zero (0x40) flags
-      sector &= 0x1F;
+      track = catalogTrack (track);
+      sector = catalogSector (sector);
 
       AppleBlock catalogSector = getSector (track, sector, BlockType.FS_DATA);
 
@@ -99,6 +98,32 @@ class FsDos4 extends FsDos
     setTotalCatalogBlocks (catalogSectors.size ());
   }
 
+  // also used by FileSystemIdentifier
+  // ---------------------------------------------------------------------------------//
+  static void checkVtoc (byte[] buffer)
+  // ---------------------------------------------------------------------------------//
+  {
+    int dosVersion = buffer[3] & 0xFF;
+    if (dosVersion < 0x41 || dosVersion > 0x45)
+      throw new FileFormatException (
+          String.format ("Dos4: version byte invalid: %02X", dosVersion));
+  }
+
+  // remove the deleted (0x80) and track zero (0x40) flags
+  // ---------------------------------------------------------------------------------//
+  static int catalogTrack (int track)
+  // ---------------------------------------------------------------------------------//
+  {
+    return track & 0x3F;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  static int catalogSector (int sector)
+  // ---------------------------------------------------------------------------------//
+  {
+    return sector & 0x1F;
+  }
+
   // ---------------------------------------------------------------------------------//
   @Override
   protected void readCatalogBlock (AppleBlock catalogSector)
@@ -29,6 +29,7 @@ class FsDosMaster extends AbstractFileSystem
     super (diskReader, FileSystemType.HYBRID);
 
     byte[] diskBuffer = diskReader.getDiskBuffer ().data ();
+    int dataPtr = diskReader.getDiskBuffer ().offset ();
 
     List<AppleBlock> dos33Blocks = dos33.getDataBlocks ();
     byte[] buffer2 = dos33Blocks.get (0).getBuffer ();
@@ -50,7 +51,8 @@ class FsDosMaster extends AbstractFileSystem
 
         String name = String.format ("S%d D%d Volume %d", slot[i], drive[i], (vol + 1));
         BlockReader slotReader =
-            new BlockReader (name, diskBuffer, offset + vol * diskLength, diskLength);
+            new BlockReader (name, diskBuffer, dataPtr + offset + vol * diskLength,
+                diskLength);
         slotReader.setParameters (FileSystemFactory.dos1);
 
         try
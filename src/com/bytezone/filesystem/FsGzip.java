@@ -8,6 +8,9 @@ import com.bytezone.utility.Utility;
 
 // https://docs.fileformat.com/compression/gzip/
 // https://docs.fileformat.com/compression/gz/
+//
+// The disk is the only thing in a gzip file, so unlike a zip it is inflated as soon
+// as the file system is created.
 // -----------------------------------------------------------------------------------//
 class FsGzip extends AbstractFileSystem
 // -----------------------------------------------------------------------------------//
@@ -24,18 +27,26 @@ class FsGzip extends AbstractFileSystem
 
     Buffer dataRecord = getDiskBuffer ();
 
+    addFileSystem (blockReader.getName (), maxBytes -> inflate (dataRecord, maxBytes));
+
+    assert Utility.isMagic (dataRecord, 0, GZIP);
+  }
+
+  // returns null as soon as it goes past maxBytes
+  // ---------------------------------------------------------------------------------//
+  private static byte[] inflate (Buffer dataRecord, long maxBytes)
+  // ---------------------------------------------------------------------------------//
+  {
     try (GZIPInputStream zip = new GZIPInputStream (  //
         new ByteArrayInputStream (                    //
             dataRecord.data (), dataRecord.offset (), dataRecord.length ()));)
     {
-      addFileSystem (blockReader.getName (), Utility.getFullBuffer (zip));
+      return Utility.getFullBuffer (zip, maxBytes);
     }
     catch (IOException e)
     {
       throw new FileFormatException (e.getMessage ());
     }
-
-    assert Utility.isMagic (dataRecord, 0, GZIP);
   }
 
   // ---------------------------------------------------------------------------------//
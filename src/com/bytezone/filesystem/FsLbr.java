@@ -1,6 +1,7 @@
 package com.bytezone.filesystem;
 
 import com.bytezone.filesystem.AppleBlock.BlockType;
+import com.bytezone.utility.Utility;
 
 // -----------------------------------------------------------------------------------//
 public class FsLbr extends AbstractFileSystem
@@ -27,8 +28,7 @@ public class FsLbr extends AbstractFileSystem
 
         if (count++ == 0)                           // directory entry
         {
-          if (file.status != 0 || !file.fileName.isBlank () || !file.extension.isBlank ())
-            throw new FileFormatException ("LBR: Invalid header");
+          checkHeader (buffer);
 
           max = file.length;                   // change outer loop
           setTotalCatalogBlocks (file.length);
@@ -41,6 +41,18 @@ public class FsLbr extends AbstractFileSystem
     }
   }
 
+  // The first entry describes the directory itself, so it has no name and at least one
+  // block. Also used by FileSystemIdentifier.
+  // ---------------------------------------------------------------------------------//
+  static void checkHeader (byte[] buffer)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (buffer[0] != 0 || !Utility.string (buffer, 1, 8).isBlank ()
+        || !Utility.string (buffer, 9, 3).isBlank ()
+        || Utility.unsignedShort (buffer, 14) == 0)
+      throw new FileFormatException ("LBR: Invalid header");
+  }
+
   // ---------------------------------------------------------------------------------//
   @Override
   public String getCatalogText ()
@@ -58,11 +58,11 @@ public class FsNuFX extends AbstractFileSystem
     if (!crcPassed)
       throw new FileFormatException ("Master CRC failed");
 
-    int ptr = 48;
+    int ptr = diskOffset + 48;
 
     for (int i = 0; i < totalRecords; i++)
     {
-      FileNuFX file = new FileNuFX (this, getDiskBuffer ().data (), ptr);
+      FileNuFX file = new FileNuFX (this, buffer, ptr);
 
       // keep everything as a file so that the catalog display works correctly
       addFile (file);         // never uses fileSystems<>
@@ -21,7 +21,7 @@ class FsWoz extends AbstractFileSystem
   {
     super (blockReader, fileSystemType);
 
-    wozFile = new WozFile (getDiskBuffer ().data ());
+    wozFile = new WozFile (getDiskBuffer ().exactData ());
     byte[] buffer = wozFile.getDiskBuffer ();
 
     if (buffer != null)
@@ -2,20 +2,34 @@ package com.bytezone.filesystem;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 
 import com.bytezone.utility.Utility;
 
 // https://docs.fileformat.com/compression/zip/
+// https://pkware.cachefly.net/webdocs/casestudies/APPNOTE.TXT
+//
+// The entries are found from the central directory at the end of the file, and each
+// one is only inflated when its file's buffer is asked for. A zip without a readable
+// central directory (eg a truncated one) is read with a ZipInputStream instead, which
+// has to pass over the earlier entries to reach each one.
 // -----------------------------------------------------------------------------------//
 class FsZip extends AbstractFileSystem
 // -----------------------------------------------------------------------------------//
 {
   static final byte[] ZIP = { 0x50, 0x4B, 0x03, 0x04 };
+  private static final int LOCAL_HEADER = 0x04034B50;
+  private static final int CENTRAL_HEADER = 0x02014B50;
+  private static final int END_HEADER = 0x06054B50;
 
   private boolean debug = false;
 
@@ -29,69 +43,248 @@ class FsZip extends AbstractFileSystem
 
     Buffer dataRecord = getDiskBuffer ();
 
-    try (ZipInputStream zip =
-        new ZipInputStream (new ByteArrayInputStream (dataRecord.data (),
-            dataRecord.offset (), dataRecord.length ()));)
+    if (!readCentralDirectory (dataRecord))
+      readEntries (dataRecord);
+
+    assert Utility.isMagic (dataRecord, 0, ZIP);
+  }
+
+  // Returns false if there is no central directory, or it can't be used
+  // ---------------------------------------------------------------------------------//
+  private boolean readCentralDirectory (Buffer dataRecord)
+  // ---------------------------------------------------------------------------------//
+  {
+    byte[] buffer = dataRecord.data ();
+    int base = dataRecord.offset ();
+    int max = dataRecord.max ();
+
+    int end = max - 22;                             // the comment is at most 64K
+    while (end >= base && end >= max - 22 - 0xFFFF
+        && Utility.unsignedInt (buffer, end) != END_HEADER)
+      --end;
+
+    if (end < base || end < max - 22 - 0xFFFF)
+      return false;
+
+    int totalEntries = Utility.unsignedShort (buffer, end + 10);
+    long directoryOffset = Utility.unsignedInt (buffer, end + 16) & 0xFFFFFFFFL;
+
+    if (totalEntries == 0xFFFF || directoryOffset >= dataRecord.length ())     // zip64
+      return false;
+
+    List<FileZip> files = new ArrayList<> ();
+    int ptr = base + (int) directoryOffset;
+
+    for (int i = 0; i < totalEntries; i++)
+    {
+      if (ptr + 46 > max || Utility.unsignedInt (buffer, ptr) != CENTRAL_HEADER)
+        return false;
+
+      int method = Utility.unsignedShort (buffer, ptr + 10);
+      int time = Utility.unsignedShort (buffer, ptr + 12);
+      int date = Utility.unsignedShort (buffer, ptr + 14);
+      long crc = Utility.unsignedInt (buffer, ptr + 16) & 0xFFFFFFFFL;
+      long compressedSize = Utility.unsignedInt (buffer, ptr + 20) & 0xFFFFFFFFL;
+      long size = Utility.unsignedInt (buffer, ptr + 24) & 0xFFFFFFFFL;
+      int nameLength = Utility.unsignedShort (buffer, ptr + 28);
+      int extraLength = Utility.unsignedShort (buffer, ptr + 30);
+      int commentLength = Utility.unsignedShort (buffer, ptr + 32);
+      long localOffset = Utility.unsignedInt (buffer, ptr + 42) & 0xFFFFFFFFL;
+
+      int namePtr = ptr + 46;
+      ptr = namePtr + nameLength + extraLength + commentLength;
+      if (ptr > max)
+        return false;
+
+      if (localOffset >= dataRecord.length () || compressedSize >= dataRecord.length ())
+        return false;                               // zip64, or nonsense
+
+      ZipEntry entry = new ZipEntry (                // same as ZipInputStream
+          new String (buffer, namePtr, nameLength, StandardCharsets.UTF_8));
+
+      entry.setCompressedSize (compressedSize);
+      entry.setSize (size);
+      entry.setCrc (crc);
+      entry.setTimeLocal (getDateTime (date, time));
+
+      if (commentLength > 0)
+        entry.setComment (new String (buffer, namePtr + nameLength + extraLength,
+            commentLength, StandardCharsets.ISO_8859_1));
+
+      try
+      {
+        entry.setMethod (method);
+        if (extraLength > 0)
+          entry.setExtra (Arrays.copyOfRange (buffer, namePtr + nameLength,
+              namePtr + nameLength + extraLength));
+      }
+      catch (IllegalArgumentException e)
+      {
+        throw new FileFormatException (String.format ("Invalid zip entry %s: %s",
+            entry.getName (), e.getMessage ()));
+      }
+
+      int local = base + (int) localOffset;
+      if (local + 30 > max || Utility.unsignedInt (buffer, local) != LOCAL_HEADER)
+        return false;
+
+      int dataPtr = local + 30 + Utility.unsignedShort (buffer, local + 26)
+          + Utility.unsignedShort (buffer, local + 28);
+      if (dataPtr + compressedSize > max)
+        return false;
+
+      zipEntries.add (entry);
+
+      if (isWanted (entry) && size > 0)
+        files.add (new FileZip (this, entry, dataPtr, -1));
+    }
+
+    for (FileZip file : files)
+      addZipFile (file);
+
+    return true;
+  }
+
+  // Without a central directory every entry must be inflated to find the next one
+  // ---------------------------------------------------------------------------------//
+  private void readEntries (Buffer dataRecord)
+  // ---------------------------------------------------------------------------------//
+  {
+    try (ZipInputStream zip = openStream (dataRecord))
     {
       ZipEntry entry;
       while ((entry = zip.getNextEntry ()) != null)
       {
+        int entryNo = zipEntries.size ();
         zipEntries.add (entry);
 
-        String name = entry.getName ();
+        if (isWanted (entry) && entry.getSize () != 0)      // -1 if not known yet
+          addZipFile (new FileZip (this, entry, -1, entryNo));
+      }
+    }
+    catch (IOException e)                     // includes ZipException
+    {
+      throw new FileFormatException (e.getMessage ());
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private boolean isWanted (ZipEntry entry)
+  // ---------------------------------------------------------------------------------//
+  {
+    String name = entry.getName ();
+
+    if (name.startsWith ("__"))
+      return false;
 
-        if (name.startsWith ("__"))
-          continue;
+    if (name.startsWith (".") || entry.isDirectory () || Utility.getSuffixNo (name) < 0)
+    {
+      if (debug)
+        System.out.printf ("Ignoring : %s%n", name);
+      return false;
+    }
 
-        if (name.startsWith (".") || entry.isDirectory ()
-            || Utility.getSuffixNo (name) < 0)
-        {
-          if (debug)
-            System.out.printf ("Ignoring : %s%n", name);
-          continue;
-        }
+    if (false)
+      System.out.printf ("%s %,9d %,9d  %-20s%n", entry.isDirectory () ? "D" : " ",
+          entry.getCompressedSize (), entry.getSize (), name);
 
-        if (false)
-          System.out.printf ("%s %,9d %,9d  %-20s%n", entry.isDirectory () ? "D" : " ",
-              entry.getCompressedSize (), entry.getSize (), name);
+    return true;
+  }
 
-        int rem = (int) entry.getSize ();
+  // Called by the file the first time its buffer is needed. The size has already been
+  // checked if it is known, only the zip's own size limits what the Inflater can
+  // produce. An entry found without the central directory stops as soon as it goes
+  // past maxBytes, and returns null.
+  // ---------------------------------------------------------------------------------//
+  Buffer inflate (ZipEntry entry, int dataPtr, int entryNo, long maxBytes)
+  // ---------------------------------------------------------------------------------//
+  {
+    Buffer dataRecord = getDiskBuffer ();
 
-        if (rem > 0)
-        {
-          byte[] buffer = new byte[rem];
-          int ptr = 0;
+    try
+    {
+      if (dataPtr < 0)
+        return readEntry (dataRecord, entryNo, maxBytes);
 
-          while (true)
-          {
-            int len = zip.read (buffer, ptr, rem);
-            if (len == 0)
-              break;
+      int size = (int) entry.getSize ();
+      int compressedSize = (int) entry.getCompressedSize ();
 
-            ptr += len;
-            rem -= len;
-          }
+      if (entry.getMethod () == ZipEntry.STORED)      // no need to copy it
+        return new Buffer (dataRecord.data (), dataPtr, Math.min (size, compressedSize));
 
-          addZipFile (new FileZip (this, name, buffer, entry));
-        }
-        else
+      byte[] buffer = new byte[size];
+      Inflater inflater = new Inflater (true);        // no zlib header
+
+      try
+      {
+        inflater.setInput (dataRecord.data (), dataPtr, compressedSize);
+
+        int ptr = 0;
+        while (ptr < size)
         {
-          byte[] buffer = Utility.getFullBuffer (zip);
-          if (buffer.length > 0)
-            addZipFile (new FileZip (this, name, buffer, entry));
+          int len = inflater.inflate (buffer, ptr, size - ptr);
+          if (len == 0 && (inflater.finished () || inflater.needsInput ()
+              || inflater.needsDictionary ()))
+            break;
+
+          ptr += len;
         }
+
+        if (ptr < size)
+          throw new FileFormatException ("Zip entry is truncated: " + entry.getName ());
       }
+      finally
+      {
+        inflater.end ();
+      }
+
+      return new Buffer (buffer, 0, size);
     }
-    catch (ZipException e)
+    catch (IOException | DataFormatException e)
     {
       throw new FileFormatException (e.getMessage ());
     }
-    catch (IOException e)
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private Buffer readEntry (Buffer dataRecord, int entryNo, long maxBytes)
+      throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    try (ZipInputStream zip = openStream (dataRecord))
     {
-      throw new FileFormatException (e.getMessage ());
+      for (int i = 0; i < entryNo; i++)
+        zip.getNextEntry ();
+
+      if (zip.getNextEntry () == null)
+        throw new FileFormatException ("Zip entry not found");
+
+      byte[] buffer = Utility.getFullBuffer (zip, maxBytes);
+      return buffer == null ? null : new Buffer (buffer, 0, buffer.length);
     }
+  }
 
-    assert Utility.isMagic (dataRecord, 0, ZIP);
+  // ---------------------------------------------------------------------------------//
+  private ZipInputStream openStream (Buffer dataRecord)
+  // ---------------------------------------------------------------------------------//
+  {
+    return new ZipInputStream (new ByteArrayInputStream (dataRecord.data (),
+        dataRecord.offset (), dataRecord.length ()));
+  }
+
+  // ---------------------------------------------------------------------------------//
+  private static LocalDateTime getDateTime (int date, int time)
+  // ---------------------------------------------------------------------------------//
+  {
+    try
+    {
+      return LocalDateTime.of ((date >>> 9) + 1980, (date >>> 5) & 0x0F, date & 0x1F,
+          time >>> 11, (time >>> 5) & 0x3F, (time & 0x1F) * 2);
+    }
+    catch (DateTimeException e)
+    {
+      return LocalDateTime.of (1980, 1, 1, 0, 0);
+    }
   }
 
   // ---------------------------------------------------------------------------------//
@@ -1,27 +1,26 @@
 package com.bytezone.filesystem;
 
+import java.nio.ByteBuffer;
+
 // -----------------------------------------------------------------------------------//
 public class MultipleSectorCopier implements ByteCopier
 // -----------------------------------------------------------------------------------//
 {
-  private final int bytesPerTrack;
-  private final int interleave;
+  private final int bytesPerBlock;
   private final int sectorsPerBlock;
 
-  private final byte[] diskBuffer;
-  private final int diskOffset;
+  private final DiskImage diskImage;
+  private final DiskLayout diskLayout;
 
   // ---------------------------------------------------------------------------------//
-  MultipleSectorCopier (Buffer dataBuffer, DiskParameters diskParameters)
+  MultipleSectorCopier (DiskImage diskImage, DiskLayout diskLayout)
   // ---------------------------------------------------------------------------------//
   {
-    bytesPerTrack = diskParameters.bytesPerBlock () * diskParameters.blocksPerTrack ();
-    interleave = diskParameters.interleave ();
-
-    sectorsPerBlock = diskParameters.bytesPerBlock () / SECTOR_SIZE;
+    bytesPerBlock = diskLayout.getDiskParameters ().bytesPerBlock ();
+    sectorsPerBlock = bytesPerBlock / SECTOR_SIZE;
 
-    diskBuffer = dataBuffer.data ();
-    diskOffset = dataBuffer.offset ();
+    this.diskImage = diskImage;
+    this.diskLayout = diskLayout;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -29,19 +28,14 @@ public class MultipleSectorCopier implements ByteCopier
   public void read (AppleBlock block, byte[] blockBuffer, int bufferOffset)
   // ---------------------------------------------------------------------------------//
   {
-    int base = block.getTrackNo () * bytesPerTrack;
-
     for (int sectorNo = 0; sectorNo < sectorsPerBlock; sectorNo++)
     {
-      int diskBufferOffset = diskOffset + base
-          + interleaves[interleave][block.getSectorNo () * sectorsPerBlock + sectorNo]
-              * SECTOR_SIZE;
-      int xfrBytes = Math.min (SECTOR_SIZE, diskBuffer.length - diskBufferOffset);
+      int diskBufferOffset = getDiskOffset (block, sectorNo);
+      int xfrBytes = Math.min (SECTOR_SIZE, diskImage.length () - diskBufferOffset);
 
       if (xfrBytes > 0)
       {
-        System.arraycopy (diskBuffer, diskBufferOffset, blockBuffer, bufferOffset,
-            xfrBytes);
+        diskImage.get (diskBufferOffset, blockBuffer, bufferOffset, xfrBytes);
         bufferOffset += SECTOR_SIZE;
       }
       else
@@ -58,15 +52,46 @@ public class MultipleSectorCopier implements ByteCopier
     byte[] blockBuffer = block.getBuffer ();
     int bufferOffset = 0;     // fix this later
 
-    int base = block.getTrackNo () * bytesPerTrack;
-
     for (int sectorNo = 0; sectorNo < sectorsPerBlock; sectorNo++)
-    {
-      int offset = base
-          + interleaves[interleave][block.getSectorNo () * sectorsPerBlock + sectorNo]
-              * SECTOR_SIZE;
-      System.arraycopy (blockBuffer, bufferOffset + sectorNo * SECTOR_SIZE, diskBuffer,
-          diskOffset + offset, SECTOR_SIZE);
-    }
+      diskImage.put (getDiskOffset (block, sectorNo), blockBuffer,
+          bufferOffset + sectorNo * SECTOR_SIZE, SECTOR_SIZE);
+  }
+
+  // only possible if the interleave happens to leave the block's sectors in order
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public ByteBuffer view (AppleBlock block)
+  // ---------------------------------------------------------------------------------//
+  {
+    int offset = getDiskOffset (block);
+    if (offset < 0)
+      return null;
+
+    return diskImage.view (offset, bytesPerBlock);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public int getDiskOffset (AppleBlock block)
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskLayout.getOffset (block.getBlockNo () * bytesPerBlock, bytesPerBlock);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public int getPieceSize ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return SECTOR_SIZE;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public int getDiskOffset (AppleBlock block, int pieceNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskLayout
+        .getOffset (block.getBlockNo () * bytesPerBlock + pieceNo * SECTOR_SIZE);
   }
 }
@@ -84,15 +84,29 @@ class NuFXThread
   byte[] getData ()
   // ---------------------------------------------------------------------------------//
   {
-    return switch (threadFormat)
+    return getData (Long.MAX_VALUE);
+  }
+
+  // Null if the data is bigger than maxBytes, the LZW decoders stop when they reach it.
+  // A disk thread's eof is not used (see LZW2), the file checks the disk's size instead.
+  // ---------------------------------------------------------------------------------//
+  byte[] getData (long maxBytes)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (!hasDisk () && uncompressedEOF > maxBytes)
+      return null;
+
+    byte[] buffer = switch (threadFormat)
     {
       case 0 -> compressedData;
       case 1 -> new Squeeze ().unSqueeze (compressedData);
-      case 2 -> new LZW1 (compressedData).getData ();
+      case 2 -> new LZW1 (compressedData).getData (maxBytes);
       case 3 -> new LZW2 (compressedData, threadCrc,
-          threadKind == 1 ? 0 : uncompressedEOF).getData ();
+          threadKind == 1 ? 0 : uncompressedEOF).getData (maxBytes);
       default -> null;
     };
+
+    return buffer == null || buffer.length > maxBytes ? null : buffer;
   }
 
   // ---------------------------------------------------------------------------------//
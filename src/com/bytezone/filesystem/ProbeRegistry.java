@@ -0,0 +1,149 @@
+package com.bytezone.filesystem;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+// -----------------------------------------------------------------------------------//
+// The probes FileSystemFactory can run, in priority order. Each probe belongs to a
+// group: a DOS file system and an OTHER file system on the same disk make a hybrid,
+// and the SINGLE probes are only tried when neither of those found anything. Within a
+// group the highest priority probe that matches always wins. A probe is only a
+// candidate when its constraint accepts the disk.
+//
+// When adaptive, the candidates of a group are tried in order of their payoff (see
+// ProbeStatistics) rather than their priority. Any candidate of lower priority than
+// a match already found is skipped, so the order only changes how quickly the
+// answer is found, never what it is.
+// -----------------------------------------------------------------------------------//
+public final class ProbeRegistry
+// -----------------------------------------------------------------------------------//
+{
+  private final List<ProbeDescriptor> probes = new CopyOnWriteArrayList<> ();
+  private final ProbeStatistics statistics = new ProbeStatistics ();
+  private volatile boolean adaptive = true;
+
+  public enum Group
+  {
+    DOS, OTHER, SINGLE
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public record ProbeDescriptor (String name, Group group,
+      Predicate<BlockReader> constraint, FileSystemProbe probe)
+  // ---------------------------------------------------------------------------------//
+  {
+    public ProbeDescriptor
+    {
+      Objects.requireNonNull (name);
+      Objects.requireNonNull (group);
+      Objects.requireNonNull (constraint);
+      Objects.requireNonNull (probe);
+    }
+  }
+
+  // a registry holding every built-in probe
+  // ---------------------------------------------------------------------------------//
+  public ProbeRegistry ()
+  // ---------------------------------------------------------------------------------//
+  {
+    BuiltInProbes.register (this);
+  }
+
+  // A probe with the same name as an existing one takes its place (and priority),
+  // otherwise it becomes the lowest priority probe.
+  // ---------------------------------------------------------------------------------//
+  public synchronized void register (ProbeDescriptor probe)
+  // ---------------------------------------------------------------------------------//
+  {
+    for (int i = 0; i < probes.size (); i++)
+      if (probes.get (i).name.equals (probe.name))
+      {
+        probes.set (i, probe);
+        return;
+      }
+
+    probes.add (probe);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized void unregister (String name)
+  // ---------------------------------------------------------------------------------//
+  {
+    probes.removeIf (probe -> probe.name.equals (name));
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public List<ProbeDescriptor> getProbes ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return List.copyOf (probes);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public ProbeDescriptor getProbe (String name)
+  // ---------------------------------------------------------------------------------//
+  {
+    for (ProbeDescriptor probe : probes)
+      if (probe.name.equals (name))
+        return probe;
+
+    return null;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public ProbeStatistics getStatistics ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return statistics;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public void setAdaptive (boolean adaptive)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.adaptive = adaptive;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public boolean isAdaptive ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return adaptive;
+  }
+
+  // The order to try a group's candidates in. The candidates must be in priority
+  // order, which is kept for equal payoffs.
+  // ---------------------------------------------------------------------------------//
+  List<ProbeDescriptor> getOrder (List<ProbeDescriptor> candidates)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (!adaptive || candidates.size () < 2)
+      return candidates;
+
+    List<ProbeDescriptor> order = new ArrayList<> (candidates);
+    order.sort (Comparator.comparingDouble (
+        (ProbeDescriptor probe) -> statistics.getPayoff (probe.name)).reversed ());
+
+    return order;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public String toString ()
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+
+    for (ProbeDescriptor probe : probes)
+      text.append (String.format ("%-9s  %s%n", probe.name, probe.group));
+
+    text.append ("\n");
+    text.append (statistics);
+
+    return text.toString ();
+  }
+}
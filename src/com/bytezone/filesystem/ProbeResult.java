@@ -0,0 +1,97 @@
+package com.bytezone.filesystem;
+
+import static com.bytezone.utility.Utility.formatText;
+
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// The outcome of a FileSystemProbe. A probe that does not recognise the disk says why
+// instead of throwing. PARTIAL means the disk looked like the probe's file system but
+// it could not be read (eg a damaged catalog).
+// -----------------------------------------------------------------------------------//
+public class ProbeResult
+// -----------------------------------------------------------------------------------//
+{
+  public enum Status
+  {
+    MATCH, NO_MATCH, PARTIAL
+  }
+
+  private final Status status;
+  private final AppleFileSystem fileSystem;       // null unless MATCH
+  private final String reason;
+
+  // ---------------------------------------------------------------------------------//
+  private ProbeResult (Status status, AppleFileSystem fileSystem, String reason)
+  // ---------------------------------------------------------------------------------//
+  {
+    this.status = status;
+    this.fileSystem = fileSystem;
+    this.reason = reason;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public static ProbeResult match (AppleFileSystem fileSystem)
+  // ---------------------------------------------------------------------------------//
+  {
+    return new ProbeResult (Status.MATCH, fileSystem, "");
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public static ProbeResult noMatch (String reason)
+  // ---------------------------------------------------------------------------------//
+  {
+    return new ProbeResult (Status.NO_MATCH, null, reason);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public static ProbeResult partial (String reason)
+  // ---------------------------------------------------------------------------------//
+  {
+    return new ProbeResult (Status.PARTIAL, null, reason);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public Status getStatus ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return status;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public boolean isMatch ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return status == Status.MATCH;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public AppleFileSystem getFileSystem ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return fileSystem;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public String getReason ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return reason;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public String toString ()
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+
+    formatText (text, "Status", status.toString ());
+    if (fileSystem != null)
+      formatText (text, "File system", fileSystem.getFileSystemType ().toString ());
+    if (!reason.isEmpty ())
+      formatText (text, "Reason", reason);
+
+    return Utility.rtrim (text);
+  }
+}
@@ -0,0 +1,163 @@
+package com.bytezone.filesystem;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.bytezone.utility.Utility;
+
+// -----------------------------------------------------------------------------------//
+// How often each probe has been run, how often it matched and how long it took. The
+// payoff (chance of a match per millisecond) decides the order ProbeRegistry tries the
+// probes of a group in. A probe that has never run is given one match in two tries
+// and a cost of one millisecond, so it is not starved before it has been measured.
+// The statistics can be saved to a text file with one tab separated line per probe.
+// -----------------------------------------------------------------------------------//
+public class ProbeStatistics
+// -----------------------------------------------------------------------------------//
+{
+  private static final long PRIOR_NANOS = 1_000_000;
+
+  private final Map<String, Counts> counts = new TreeMap<> ();
+
+  // ---------------------------------------------------------------------------------//
+  public record Counts (long attempts, long matches, long nanos)
+  // ---------------------------------------------------------------------------------//
+  {
+    // ---------------------------------------------------------------------------------//
+    Counts add (Counts other)
+    // ---------------------------------------------------------------------------------//
+    {
+      return new Counts (attempts + other.attempts, matches + other.matches,
+          nanos + other.nanos);
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  synchronized void record (String probe, boolean match, long nanos)
+  // ---------------------------------------------------------------------------------//
+  {
+    counts.merge (probe, new Counts (1, match ? 1 : 0, nanos), Counts::add);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized Counts getCounts (String probe)
+  // ---------------------------------------------------------------------------------//
+  {
+    return counts.getOrDefault (probe, new Counts (0, 0, 0));
+  }
+
+  // expected matches per millisecond
+  // ---------------------------------------------------------------------------------//
+  public synchronized double getPayoff (String probe)
+  // ---------------------------------------------------------------------------------//
+  {
+    Counts c = getCounts (probe);
+
+    double hitRate = (c.matches + 1.0) / (c.attempts + 2.0);
+    double nanos = (c.nanos + PRIOR_NANOS) / (c.attempts + 1.0);
+
+    return hitRate / nanos * 1_000_000;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public synchronized void clear ()
+  // ---------------------------------------------------------------------------------//
+  {
+    counts.clear ();
+  }
+
+  // Adds the saved statistics to the current ones. A missing file is not an error,
+  // there is simply nothing to add yet.
+  // ---------------------------------------------------------------------------------//
+  public synchronized void load (Path path)
+  // ---------------------------------------------------------------------------------//
+  {
+    if (!Files.exists (path))
+      return;
+
+    try (BufferedReader reader = Files.newBufferedReader (path))
+    {
+      String line;
+      while ((line = reader.readLine ()) != null)
+      {
+        String[] fields = line.split ("\t");
+        if (fields.length != 4)
+          continue;
+
+        try
+        {
+          Counts c = new Counts (Long.parseLong (fields[1]), Long.parseLong (fields[2]),
+              Long.parseLong (fields[3]));
+
+          if (c.attempts < 1 || c.matches < 0 || c.matches > c.attempts || c.nanos < 0)
+            System.out.printf ("Ignoring probe statistics: %s%n", fields[0]);
+          else
+            counts.merge (fields[0], c, Counts::add);
+        }
+        catch (NumberFormatException e)
+        {
+          System.out.printf ("Ignoring probe statistics: %s%n", fields[0]);
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace ();
+    }
+  }
+
+  // Written to a temporary file first so that a failed save never loses the old file
+  // ---------------------------------------------------------------------------------//
+  public synchronized void save (Path path)
+  // ---------------------------------------------------------------------------------//
+  {
+    Path tempFile = path.resolveSibling (path.getFileName () + ".tmp");
+
+    try
+    {
+      try (BufferedWriter writer = Files.newBufferedWriter (tempFile))
+      {
+        for (Map.Entry<String, Counts> entry : counts.entrySet ())
+        {
+          Counts c = entry.getValue ();
+          writer.write (String.format ("%s\t%d\t%d\t%d", entry.getKey (), c.attempts,
+              c.matches, c.nanos));
+          writer.newLine ();
+        }
+      }
+
+      Files.move (tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace ();
+    }
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public synchronized String toString ()
+  // ---------------------------------------------------------------------------------//
+  {
+    StringBuilder text = new StringBuilder ();
+
+    text.append ("Probe       Attempts   Matches   Avg usec    Payoff\n");
+    text.append ("---------  ---------  --------  ---------  --------\n");
+
+    for (Map.Entry<String, Counts> entry : counts.entrySet ())
+    {
+      Counts c = entry.getValue ();
+      text.append (String.format ("%-9s  %,9d  %,8d  %,9d  %8.3f%n", entry.getKey (),
+          c.attempts, c.matches, c.nanos / Math.max (c.attempts, 1) / 1000,
+          getPayoff (entry.getKey ())));
+    }
+
+    return Utility.rtrim (text);
+  }
+}
@@ -1,22 +1,24 @@
 package com.bytezone.filesystem;
 
+import java.nio.ByteBuffer;
+
 // -----------------------------------------------------------------------------------//
 public class SingleBlockCopier implements ByteCopier
 // -----------------------------------------------------------------------------------//
 {
   private final int bytesPerBlock;
 
-  private final byte[] diskBuffer;
-  private final int diskOffset;
+  private final DiskImage diskImage;
+  private final DiskLayout diskLayout;
 
   // ---------------------------------------------------------------------------------//
-  SingleBlockCopier (Buffer dataBuffer, DiskParameters diskParameters)
+  SingleBlockCopier (DiskImage diskImage, DiskLayout diskLayout)
   // ---------------------------------------------------------------------------------//
   {
-    bytesPerBlock = diskParameters.bytesPerBlock ();
+    bytesPerBlock = diskLayout.getDiskParameters ().bytesPerBlock ();
 
-    diskBuffer = dataBuffer.data ();
-    diskOffset = dataBuffer.offset ();
+    this.diskImage = diskImage;
+    this.diskLayout = diskLayout;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -24,12 +26,11 @@ public class SingleBlockCopier implements ByteCopier
   public void read (AppleBlock block, byte[] blockBuffer, int bufferOffset)
   // ---------------------------------------------------------------------------------//
   {
-    int diskBufferOffset = diskOffset + block.getBlockNo () * bytesPerBlock;
-    int xfrBytes = Math.min (bytesPerBlock, diskBuffer.length - diskBufferOffset);
+    int diskBufferOffset = getDiskOffset (block);
+    int xfrBytes = Math.min (bytesPerBlock, diskImage.length () - diskBufferOffset);
 
     if (xfrBytes > 0)
-      System.arraycopy (diskBuffer, diskBufferOffset, blockBuffer, bufferOffset,
-          xfrBytes);
+      diskImage.get (diskBufferOffset, blockBuffer, bufferOffset, xfrBytes);
     else
       System.out.printf ("Block %d out of range%n", block.getBlockNo ());
   }
@@ -42,7 +43,39 @@ public class SingleBlockCopier implements ByteCopier
     byte[] blockBuffer = block.getBuffer ();
     int bufferOffset = 0;     // fix this later
 
-    System.arraycopy (blockBuffer, bufferOffset, diskBuffer,
-        diskOffset + block.getBlockNo () * bytesPerBlock, bytesPerBlock);
+    diskImage.put (getDiskOffset (block), blockBuffer, bufferOffset, bytesPerBlock);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public ByteBuffer view (AppleBlock block)
+  // ---------------------------------------------------------------------------------//
+  {
+    int offset = getDiskOffset (block);
+    return diskImage.view (offset, bytesPerBlock);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public int getDiskOffset (AppleBlock block)
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskLayout.getOffset (block.getBlockNo () * bytesPerBlock);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public int getPieceSize ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return bytesPerBlock;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public int getDiskOffset (AppleBlock block, int pieceNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    return getDiskOffset (block);
   }
 }
@@ -1,24 +1,20 @@
 package com.bytezone.filesystem;
 
+import java.nio.ByteBuffer;
+
 // -----------------------------------------------------------------------------------//
 public class SingleSectorCopier implements ByteCopier
 // -----------------------------------------------------------------------------------//
 {
-  private final int bytesPerTrack;
-  private final int interleave;
-
-  private final byte[] diskBuffer;
-  private final int diskOffset;
+  private final DiskImage diskImage;
+  private final DiskLayout diskLayout;
 
   // ---------------------------------------------------------------------------------//
-  SingleSectorCopier (Buffer dataBuffer, DiskParameters diskParameters)
+  SingleSectorCopier (DiskImage diskImage, DiskLayout diskLayout)
   // ---------------------------------------------------------------------------------//
   {
-    bytesPerTrack = diskParameters.bytesPerBlock () * diskParameters.blocksPerTrack ();
-    interleave = diskParameters.interleave ();
-
-    diskBuffer = dataBuffer.data ();
-    diskOffset = dataBuffer.offset ();
+    this.diskImage = diskImage;
+    this.diskLayout = diskLayout;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -26,13 +22,11 @@ public class SingleSectorCopier implements ByteCopier
   public void read (AppleBlock block, byte[] blockBuffer, int bufferOffset)
   // ---------------------------------------------------------------------------------//
   {
-    int diskBufferOffset = diskOffset + block.getTrackNo () * bytesPerTrack
-        + interleaves[interleave][block.getSectorNo ()] * SECTOR_SIZE;
-    int xfrBytes = Math.min (SECTOR_SIZE, diskBuffer.length - diskBufferOffset);
+    int diskBufferOffset = getDiskOffset (block);
+    int xfrBytes = Math.min (SECTOR_SIZE, diskImage.length () - diskBufferOffset);
 
     if (xfrBytes > 0)
-      System.arraycopy (diskBuffer, diskBufferOffset, blockBuffer, bufferOffset,
-          xfrBytes);
+      diskImage.get (diskBufferOffset, blockBuffer, bufferOffset, xfrBytes);
     else
       System.out.printf ("Sector %d out of range%n", block.getBlockNo ());
   }
@@ -45,10 +39,40 @@ public class SingleSectorCopier implements ByteCopier
     byte[] blockBuffer = block.getBuffer ();
     int bufferOffset = 0;     // fix this later
 
-    int offset = block.getTrackNo () * bytesPerTrack
-        + interleaves[interleave][block.getSectorNo ()] * SECTOR_SIZE;
+    diskImage.put (getDiskOffset (block), blockBuffer, bufferOffset, SECTOR_SIZE);
+  }
+
+  // a sector is always contiguous, even when the track is interleaved
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public ByteBuffer view (AppleBlock block)
+  // ---------------------------------------------------------------------------------//
+  {
+    int offset = getDiskOffset (block);
+    return diskImage.view (offset, SECTOR_SIZE);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public int getDiskOffset (AppleBlock block)
+  // ---------------------------------------------------------------------------------//
+  {
+    return diskLayout.getOffset (block.getBlockNo () * SECTOR_SIZE);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public int getPieceSize ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return SECTOR_SIZE;
+  }
 
-    System.arraycopy (blockBuffer, bufferOffset, diskBuffer, diskOffset + offset,
-        SECTOR_SIZE);
+  // ---------------------------------------------------------------------------------//
+  @Override
+  public int getDiskOffset (AppleBlock block, int pieceNo)
+  // ---------------------------------------------------------------------------------//
+  {
+    return getDiskOffset (block);
   }
 }
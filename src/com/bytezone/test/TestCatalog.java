@@ -0,0 +1,40 @@
+package com.bytezone.test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.bytezone.filesystem.CatalogProgress;
+import com.bytezone.filesystem.Cataloguer;
+
+// -----------------------------------------------------------------------------------//
+public class TestCatalog extends Tester
+// -----------------------------------------------------------------------------------//
+{
+  // ---------------------------------------------------------------------------------//
+  TestCatalog () throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    Cataloguer cataloguer = new Cataloguer (Runtime.getRuntime ().availableProcessors ());
+    cataloguer.setFactorySetup (factory -> factory.setMemoryMapped (true));
+
+    CatalogProgress progress = cataloguer.catalog (Path.of (base), result ->
+    {
+      if (!result.errorMessage ().isEmpty ())
+        System.out.printf ("%-6s  %s  %s%n", result.fileSystemType (),
+            result.path ().toString ().substring (base.length ()),
+            result.errorMessage ());
+    });
+
+    System.out.println ();
+    System.out.println (progress);
+    System.out.println ();
+    System.out.println (cataloguer.getProbeRegistry ());
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public static void main (String[] args) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    new TestCatalog ();
+  }
+}
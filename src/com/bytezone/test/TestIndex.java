@@ -0,0 +1,49 @@
+package com.bytezone.test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.bytezone.filesystem.Cataloguer;
+import com.bytezone.filesystem.FileIndex;
+import com.bytezone.filesystem.FileIndex.Hit;
+
+// -----------------------------------------------------------------------------------//
+public class TestIndex extends Tester
+// -----------------------------------------------------------------------------------//
+{
+  // ---------------------------------------------------------------------------------//
+  TestIndex (String name, int fileType, int auxType) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    FileIndex index = new FileIndex (Path.of (base, "files.idx"));
+
+    Cataloguer cataloguer = new Cataloguer (Runtime.getRuntime ().availableProcessors ());
+    System.out.println (index.update (Path.of (base), cataloguer));
+    index.save ();
+
+    System.out.println ();
+    System.out.println (index);
+    System.out.println ();
+
+    long start = System.nanoTime ();
+    List<Hit> hits = index.find (name, fileType, auxType);
+    long nanos = System.nanoTime () - start;
+
+    for (Hit hit : hits)
+    {
+      String image = hit.image ().toString ().substring (base.length ());
+      System.out.printf ("%02X  %04X  %,9d  %s  %s%n", hit.fileType (), hit.auxType (),
+          hit.length (), image, hit.path ());
+    }
+
+    System.out.printf ("%n%,d files found in %,d us%n", hits.size (), nanos / 1000);
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public static void main (String[] args) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    new TestIndex ("HELLO*", 0x06, FileIndex.ANY);
+  }
+}
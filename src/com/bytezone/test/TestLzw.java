@@ -0,0 +1,108 @@
+package com.bytezone.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import com.bytezone.filesystem.AppleFile;
+import com.bytezone.filesystem.AppleFileSystem;
+import com.bytezone.filesystem.FileSystemFactory;
+import com.bytezone.filesystem.FileSystemWalker;
+import com.bytezone.filesystem.FileSystemWalker.Kind;
+import com.bytezone.utility.LZW1;
+
+// Decompresses the same NuFX archives on many threads at once, and checks that every
+// file comes out the same as it did when they were decompressed one at a time. A
+// thread CRC that fails is also counted, even if it fails the same way both times.
+// -----------------------------------------------------------------------------------//
+public class TestLzw extends Tester
+// -----------------------------------------------------------------------------------//
+{
+  // ---------------------------------------------------------------------------------//
+  TestLzw (int threads, int rounds) throws Exception
+  // ---------------------------------------------------------------------------------//
+  {
+    List<Path> archives = new ArrayList<> ();
+    for (String folder : new String[] { sdk, shk, bxy })
+      try (Stream<Path> paths = Files.list (Path.of (folder)))
+      {
+        paths.filter (Files::isRegularFile).sorted ().forEach (archives::add);
+      }
+
+    int crcFailures = LZW1.getTotalCrcFailures ();
+
+    List<List<Long>> expected = new ArrayList<> ();
+    for (Path archive : archives)
+      expected.add (getHashes (archive));
+
+    int sequentialCrcFailures = LZW1.getTotalCrcFailures () - crcFailures;
+    crcFailures = LZW1.getTotalCrcFailures ();
+
+    long start = System.nanoTime ();
+    List<Future<List<Long>>> futures = new ArrayList<> ();
+
+    try (ExecutorService executor = Executors.newFixedThreadPool (threads))
+    {
+      for (int round = 0; round < rounds; round++)
+        for (Path archive : archives)
+          futures.add (executor.submit (() -> getHashes (archive)));
+    }
+
+    int failed = 0;
+    for (int i = 0; i < futures.size (); i++)
+    {
+      int archiveNo = i % archives.size ();
+      if (!futures.get (i).get ().equals (expected.get (archiveNo)))
+      {
+        System.out.printf ("Different: %s%n", archives.get (archiveNo));
+        ++failed;
+      }
+    }
+
+    int parallelCrcFailures = LZW1.getTotalCrcFailures () - crcFailures;
+
+    long millis = (System.nanoTime () - start) / 1000000;
+    System.out.printf ("%,d archives x %,d rounds on %,d threads, %,d failed, %,d ms%n",
+        archives.size (), rounds, threads, failed, millis);
+    System.out.printf ("CRC failures: %,d one at a time, %,d in parallel%n",
+        sequentialCrcFailures, parallelCrcFailures);
+
+    if (failed > 0 || sequentialCrcFailures > 0 || parallelCrcFailures > 0)
+      throw new AssertionError ("LZW decoding failed");
+  }
+
+  // every file is decompressed by a new file system, so nothing is shared
+  // ---------------------------------------------------------------------------------//
+  private List<Long> getHashes (Path archive) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    List<Long> hashes = new ArrayList<> ();
+
+    AppleFileSystem fs = new FileSystemFactory ().getFileSystem (archive);
+    if (fs == null)
+      return hashes;
+
+    new FileSystemWalker ().walk (fs, node ->
+    {
+      AppleFile file = node.file ();
+      if ((node.kind () == Kind.FILE || node.kind () == Kind.FORK)
+          && !file.isForkedFile ())
+        hashes.add (file.getFileBuffer ().hash ());
+    });
+
+    return hashes;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public static void main (String[] args) throws Exception
+  // ---------------------------------------------------------------------------------//
+  {
+    new TestLzw (Runtime.getRuntime ().availableProcessors () * 2, 10);
+  }
+}
@@ -0,0 +1,109 @@
+package com.bytezone.test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.bytezone.filesystem.AppleFile;
+import com.bytezone.filesystem.AppleFileSystem;
+import com.bytezone.filesystem.FileNuFX;
+import com.bytezone.filesystem.FileSystemFactory;
+import com.bytezone.filesystem.FileSystemWalker;
+import com.sun.management.ThreadMXBean;
+
+// Measures the bytes allocated and the time taken to decompress each LZW/1 or LZW/2
+// disk image in the SDK folder (mostly 800K disks). Each archive is opened again for
+// every decode, and only getRawFileBuffer() is measured, so the figures are for the
+// LZW decoder plus the disk's buffer.
+// -----------------------------------------------------------------------------------//
+public class TestLzwAllocation extends Tester
+// -----------------------------------------------------------------------------------//
+{
+  private static final String[] formats = { "", "", "LZW/1", "LZW/2" };
+
+  private final ThreadMXBean threadBean =
+      (ThreadMXBean) ManagementFactory.getThreadMXBean ();
+
+  // ---------------------------------------------------------------------------------//
+  TestLzwAllocation (int warmups, int rounds) throws Exception
+  // ---------------------------------------------------------------------------------//
+  {
+    List<Path> archives = new ArrayList<> ();
+    try (Stream<Path> paths = Files.list (Path.of (sdk)))
+    {
+      paths.filter (Files::isRegularFile).sorted ().forEach (archives::add);
+    }
+
+    System.out.println ("Format    Disk size   Bytes/decode   usec/decode  Archive");
+    System.out.println ("------  -----------  -------------  -----------  -------");
+
+    for (Path archive : archives)
+    {
+      int totalDisks = getDisks (archive).size ();
+
+      for (int diskNo = 0; diskNo < totalDisks; diskNo++)
+      {
+        FileNuFX disk = getDisks (archive).get (diskNo);
+        int format = disk.getThreadFormat ();
+        if (format != 2 && format != 3)
+          continue;
+
+        for (int i = 0; i < warmups; i++)
+          getDisks (archive).get (diskNo).getRawFileBuffer ();
+
+        long totalBytes = 0;
+        long totalNanos = 0;
+
+        for (int i = 0; i < rounds; i++)
+        {
+          disk = getDisks (archive).get (diskNo);
+
+          long bytes = threadBean.getCurrentThreadAllocatedBytes ();
+          long start = System.nanoTime ();
+
+          disk.getRawFileBuffer ();
+
+          totalNanos += System.nanoTime () - start;
+          totalBytes += threadBean.getCurrentThreadAllocatedBytes () - bytes;
+        }
+
+        System.out.printf ("%-6s  %,11d  %,13d  %,11d  %s%n", formats[format],
+            disk.getUncompressedSize (), totalBytes / rounds, totalNanos / rounds / 1000,
+            archive.getFileName ());
+      }
+    }
+  }
+
+  // a new file system every time, so nothing has been decompressed yet
+  // ---------------------------------------------------------------------------------//
+  private List<FileNuFX> getDisks (Path archive)
+  // ---------------------------------------------------------------------------------//
+  {
+    List<FileNuFX> disks = new ArrayList<> ();
+
+    AppleFileSystem fs = new FileSystemFactory ().getFileSystem (archive);
+    if (fs == null)
+      return disks;
+
+    FileSystemWalker walker = new FileSystemWalker ();
+    walker.setEmbedded (false);
+    walker.walk (fs, node ->
+    {
+      AppleFile file = node.file ();
+      if (file instanceof FileNuFX fileNuFX && fileNuFX.hasDisk ())
+        disks.add (fileNuFX);
+    });
+
+    return disks;
+  }
+
+  // ---------------------------------------------------------------------------------//
+  public static void main (String[] args) throws Exception
+  // ---------------------------------------------------------------------------------//
+  {
+    new TestLzwAllocation (20, 20);
+  }
+}
@@ -3,13 +3,29 @@ package com.bytezone.utility;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // -----------------------------------------------------------------------------------//
 abstract class LZW
 // -----------------------------------------------------------------------------------//
 {
-  static final String[] st = new String[0x1000];
   static final int TRACK_LENGTH = 0x1000;
+  static final int TABLE_SIZE = 0x1000;
+  static final int FIRST_ENTRY = 0x100;     // codes below this are single characters
+
+  // only a count, so that tests can see failures that are otherwise just printed
+  private static final AtomicInteger totalCrcFailures = new AtomicInteger ();
+
+  // Each entry in the table is an earlier entry (or nothing) plus one character, so
+  // a string is found by following the prefixes back to the start. Each decoder has
+  // its own table.
+  private final int[] prefix = new int[TABLE_SIZE];
+  private final byte[] suffix = new byte[TABLE_SIZE];
+  private final byte[] stack = new byte[TABLE_SIZE];    // a string, last character first
+  final byte[] lzwBuffer = new byte[TRACK_LENGTH];     // reused for every chunk
+
+  int nextEntry = FIRST_ENTRY;
+  int prevCode = -1;                        // the previous string, -1 for none
 
   final List<byte[]> chunks = new ArrayList<> ();
   int volume;
@@ -19,7 +35,7 @@ abstract class LZW
   int crcBase;
   int v3eof;                     // LZW/2 calculates the crc without padding
 
-  private int byteBuffer;        // one character buffer
+  private int bitBuffer;         // bits read but not yet used
   private int bitsLeft;          // unused bits left in buffer
 
   private int ptr;
@@ -27,14 +43,8 @@ abstract class LZW
   byte[] buffer;
 
   boolean unpacked;
-
-  // ---------------------------------------------------------------------------------//
-  static
-  // ---------------------------------------------------------------------------------//
-  {
-    for (int i = 0; i < 256; i++)
-      st[i] = "" + (char) i;
-  }
+  private long maxBytes = Long.MAX_VALUE;   // unpack() stops before going past this
+  private boolean full;                     // it did stop
 
   // ---------------------------------------------------------------------------------//
   LZW (byte[] buffer)
@@ -52,6 +62,7 @@ abstract class LZW
   // ---------------------------------------------------------------------------------//
   {
     startPtr = this.ptr = ptr;
+    bitBuffer = 0;
     bitsLeft = 0;
   }
 
@@ -69,28 +80,70 @@ abstract class LZW
     if (width < 8 || width > 12)
       throw new RuntimeException ("Illegal value of r = " + width);
 
-    int x = 0;
-    for (int i = 0, weight = 1; i < width; i++, weight <<= 1)
-      if (readBoolean ())
-        x |= weight;
+    while (bitsLeft < width)                  // bits are read from the low end first
+    {
+      bitBuffer |= (buffer[ptr++] & 0xFF) << bitsLeft;
+      bitsLeft += 8;
+    }
+
+    int x = bitBuffer & ((1 << width) - 1);
+    bitBuffer >>>= width;
+    bitsLeft -= width;
 
     return x;
   }
 
+  // Writes the string for codeWord to lzwBuffer at ptr, and adds the previous string
+  // plus the first character of this one to the table. Returns the new ptr.
+  // ---------------------------------------------------------------------------------//
+  int decode (int codeWord, int ptr)
+  // ---------------------------------------------------------------------------------//
+  {
+    int start = ptr;
+
+    if (codeWord == nextEntry)                // not in the table yet
+    {
+      if (prevCode < 0)
+        throw new RuntimeException ("Illegal code word = " + codeWord);
+
+      ptr = writeString (prevCode, ptr);
+      lzwBuffer[ptr++] = lzwBuffer[start];    // prev + prev[0]
+    }
+    else if (codeWord > nextEntry)
+      throw new RuntimeException ("Illegal code word = " + codeWord);
+    else
+      ptr = writeString (codeWord, ptr);
+
+    if (nextEntry < TABLE_SIZE)
+    {
+      prefix[nextEntry] = prevCode;
+      suffix[nextEntry++] = lzwBuffer[start];
+    }
+
+    prevCode = codeWord;
+
+    return ptr;
+  }
+
   // ---------------------------------------------------------------------------------//
-  private boolean readBoolean ()
+  private int writeString (int code, int ptr)
   // ---------------------------------------------------------------------------------//
   {
-    if (bitsLeft == 0)
+    int depth = 0;
+
+    while (code >= FIRST_ENTRY)
     {
-      byteBuffer = buffer[ptr++] & 0xFF;
-      bitsLeft = 8;
+      stack[depth++] = suffix[code];
+      code = prefix[code];
     }
 
-    bitsLeft--;
-    boolean bit = ((byteBuffer << bitsLeft) & 0x80) != 0;
+    if (code >= 0)                            // the entry after a reset has no prefix
+      stack[depth++] = (byte) code;
+
+    while (depth > 0)
+      lzwBuffer[ptr++] = stack[--depth];
 
-    return bit;
+    return ptr;
   }
 
   // ---------------------------------------------------------------------------------//
@@ -132,16 +185,40 @@ abstract class LZW
     return chunks.size () * TRACK_LENGTH;
   }
 
+  // Called by unpack() before each chunk. The thread header's eof can't be trusted, so
+  // this is what stops a small thread from filling the heap.
+  // ---------------------------------------------------------------------------------//
+  boolean isFull ()
+  // ---------------------------------------------------------------------------------//
+  {
+    if ((long) (chunks.size () + 1) * TRACK_LENGTH > maxBytes)
+      full = true;
+
+    return full;
+  }
+
   // ---------------------------------------------------------------------------------//
   public byte[] getData ()
   // ---------------------------------------------------------------------------------//
+  {
+    return getData (Long.MAX_VALUE);
+  }
+
+  // null if the data would be bigger than maxBytes, nothing past it is decompressed
+  // ---------------------------------------------------------------------------------//
+  public byte[] getData (long maxBytes)
+  // ---------------------------------------------------------------------------------//
   {
     if (!unpacked)
     {
+      this.maxBytes = maxBytes;
       unpack ();
       unpacked = true;
     }
 
+    if (full)
+      return null;
+
     byte[] buffer = new byte[getSize ()];
     int trackNumber = 0;
 
@@ -154,12 +231,21 @@ abstract class LZW
     if (crc != calculatedCrc)
     {
       System.out.printf ("%n*** Thread CRC failed ***  %04X  %04X%n", crc, calculatedCrc);
+      totalCrcFailures.incrementAndGet ();
       //      throw new FileFormatException ("Thread CRC failed");
     }
 
     return buffer;
   }
 
+  // every CRC that has failed, in all decoders and threads
+  // ---------------------------------------------------------------------------------//
+  public static int getTotalCrcFailures ()
+  // ---------------------------------------------------------------------------------//
+  {
+    return totalCrcFailures.get ();
+  }
+
   // ---------------------------------------------------------------------------------//
   int width (int maximumValue)
   // ---------------------------------------------------------------------------------//
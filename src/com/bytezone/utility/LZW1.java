@@ -23,7 +23,7 @@ public class LZW1 extends LZW
     runLengthChar = (byte) (buffer[3] & 0xFF);
     int ptr = 4;
 
-    while (ptr < buffer.length - 2)
+    while (ptr < buffer.length - 2 && !isFull ())
     {
       int rleLength = Utility.unsignedShort (buffer, ptr);
       boolean lzwPerformed = (buffer[ptr + 2] & 0xFF) != 0;
@@ -32,12 +32,12 @@ public class LZW1 extends LZW
       if (lzwPerformed)
       {
         setBuffer (ptr);                    // prepare to read n-bit integers
-        byte[] lzwBuffer = undoLZW (rleLength);
+        undoLZW (rleLength);
 
         if (rleLength == TRACK_LENGTH)      // no run length encoding
-          chunks.add (lzwBuffer);
+          chunks.add (lzwBuffer.clone ());
         else
-          chunks.add (undoRLE (lzwBuffer, 0, lzwBuffer.length));
+          chunks.add (undoRLE (lzwBuffer, 0, rleLength));
 
         ptr += bytesRead ();                // since the setBuffer()
       }
@@ -57,31 +57,18 @@ public class LZW1 extends LZW
     }
   }
 
+  // fills lzwBuffer with rleLength bytes
   // ---------------------------------------------------------------------------------//
-  byte[] undoLZW (int rleLength)
+  void undoLZW (int rleLength)
   // ---------------------------------------------------------------------------------//
   {
-    byte[] lzwBuffer = new byte[rleLength];       // must fill this array from input
     int ptr = 0;
 
-    int nextEntry = 0x100;                        // always start with a fresh table
-    String prev = "";
+    nextEntry = FIRST_ENTRY;                      // always start with a fresh table
+    prevCode = -1;
 
     while (ptr < rleLength)
-    {
-      int codeWord = readInt (width (nextEntry + 1));
-      String s = (nextEntry == codeWord) ? prev + prev.charAt (0) : st[codeWord];
-
-      if (nextEntry < st.length)
-        st[nextEntry++] = prev + s.charAt (0);
-
-      for (int i = 0; i < s.length (); i++)
-        lzwBuffer[ptr++] = (byte) s.charAt (i);
-
-      prev = s;
-    }
-
-    return lzwBuffer;
+      ptr = decode (readInt (width (nextEntry + 1)), ptr);
   }
 
   // ---------------------------------------------------------------------------------//
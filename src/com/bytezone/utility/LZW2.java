@@ -4,10 +4,6 @@ package com.bytezone.utility;
 public class LZW2 extends LZW
 // -----------------------------------------------------------------------------------//
 {
-  private int nextEntry = 0x100;
-  private String prev = "";
-  private int codeWord;
-
   // ---------------------------------------------------------------------------------//
   public LZW2 (byte[] buffer, int crc, int eof)
   // ---------------------------------------------------------------------------------//
@@ -24,13 +20,12 @@ public class LZW2 extends LZW
   // ---------------------------------------------------------------------------------//
   {
     crcBase = 0xFFFF;
-    codeWord = 0;
 
     volume = buffer[0] & 0xFF;
     runLengthChar = (byte) (buffer[1] & 0xFF);
     int ptr = 2;
 
-    while (ptr < buffer.length - 1)
+    while (ptr < buffer.length - 1 && !isFull ())
     {
       int rleLength = Utility.unsignedShort (buffer, ptr);
       boolean lzwPerformed = (rleLength & 0x8000) != 0;
@@ -46,21 +41,21 @@ public class LZW2 extends LZW
         ptr += 2;
 
         setBuffer (ptr);                    // prepare to read n-bit integers
-        byte[] lzwBuffer = undoLZW (rleLength);
+        undoLZW (rleLength);
 
         if ((chunkLength - 4) != bytesRead ())
           System.out.printf ("Invalid chunk length%n");
 
         if (rleLength == TRACK_LENGTH)      // no run length encoding
-          chunks.add (lzwBuffer);
+          chunks.add (lzwBuffer.clone ());
         else
-          chunks.add (undoRLE (lzwBuffer, 0, lzwBuffer.length));
+          chunks.add (undoRLE (lzwBuffer, 0, rleLength));
 
         ptr += bytesRead ();                // since the setBuffer()
       }
       else
       {
-        nextEntry = 0x100;
+        nextEntry = FIRST_ENTRY;
         if (rleLength == 0)
           rleLength = TRACK_LENGTH;
 
@@ -78,36 +73,27 @@ public class LZW2 extends LZW
     }
   }
 
+  // fills lzwBuffer with rleLength bytes, carrying on with the table from the previous
+  // chunk
   // ---------------------------------------------------------------------------------//
-  byte[] undoLZW (int rleLength)
+  void undoLZW (int rleLength)
   // ---------------------------------------------------------------------------------//
   {
-    byte[] lzwBuffer = new byte[rleLength];      // must fill this array from buffer
     int ptr = 0;
 
     while (ptr < rleLength)
     {
-      codeWord = readInt (width (nextEntry + 1));
+      int codeWord = readInt (width (nextEntry + 1));
 
       if (codeWord == 0x100)      // clear the table
       {
-        nextEntry = 0x100;
+        nextEntry = FIRST_ENTRY;
         codeWord = readInt (9);
-        prev = "";
+        prevCode = -1;
       }
 
-      String s = (nextEntry == codeWord) ? prev + prev.charAt (0) : st[codeWord];
-
-      if (nextEntry < st.length)
-        st[nextEntry++] = prev + s.charAt (0);
-
-      for (int i = 0; i < s.length (); i++)
-        lzwBuffer[ptr++] = (byte) s.charAt (i);
-
-      prev = s;
+      ptr = decode (codeWord, ptr);
     }
-
-    return lzwBuffer;
   }
 
   // ---------------------------------------------------------------------------------//
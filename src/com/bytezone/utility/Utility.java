@@ -878,11 +878,21 @@ public class Utility
   public static byte[] getFullBuffer (InputStream zip) throws IOException
   // ---------------------------------------------------------------------------------//
   {
+    return getFullBuffer (zip, Long.MAX_VALUE);
+  }
+
+  // Stops reading and returns null as soon as there are more than maxBytes
+  // ---------------------------------------------------------------------------------//
+  public static byte[] getFullBuffer (InputStream zip, long maxBytes) throws IOException
+  // ---------------------------------------------------------------------------------//
+  {
+    maxBytes = Math.min (maxBytes, Integer.MAX_VALUE - 8);      // the biggest array
+
     List<byte[]> buffers = new ArrayList<> ();
     List<Integer> sizes = new ArrayList<> ();
 
     int bytesRead;
-    int size = 0;
+    long size = 0;
     int ptr = 0;
 
     while (true)
@@ -896,9 +906,12 @@ public class Utility
       buffers.add (buffer);
       sizes.add (bytesRead);
       size += bytesRead;
+
+      if (size > maxBytes)
+        return null;
     }
 
-    byte[] buffer = new byte[size];
+    byte[] buffer = new byte[(int) size];
 
     for (int i = 0; i < buffers.size (); i++)
     {
@@ -9,10 +9,6 @@ abstract class DiskReader
   static final int BLOCK_SIZE = 512;
   static final byte[] dataPrologue = { (byte) 0xD5, (byte) 0xAA, (byte) 0xAD };
 
-  protected static DiskReader reader13;
-  protected static DiskReader reader16;
-  protected static DiskReader readerGCR;
-
   final int sectorsPerTrack;
 
   // ---------------------------------------------------------------------------------//
@@ -22,49 +18,21 @@ abstract class DiskReader
     this.sectorsPerTrack = sectorsPerTrack;
   }
 
+  // A new reader every time. Readers decode into their own buffers, so one that was
+  // shared would be overwritten when several images are opened at once.
   // ---------------------------------------------------------------------------------//
   static DiskReader getInstance (int sectors)
   // ---------------------------------------------------------------------------------//
   {
     return switch (sectors)
     {
-      case 13 -> diskReader13Sector ();
-      case 16 -> diskReader16Sector ();
-      case 0 -> diskReaderGCR ();
+      case 13 -> new DiskReader13Sector ();
+      case 16 -> new DiskReader16Sector ();
+      case 0 -> new DiskReaderGCR ();
       default -> null;
     };
   }
 
-  // ---------------------------------------------------------------------------------//
-  private static DiskReader diskReader13Sector ()
-  // ---------------------------------------------------------------------------------//
-  {
-    if (reader13 == null)
-      reader13 = new DiskReader13Sector ();
-
-    return reader13;
-  }
-
-  // ---------------------------------------------------------------------------------//
-  private static DiskReader diskReader16Sector ()
-  // ---------------------------------------------------------------------------------//
-  {
-    if (reader16 == null)
-      reader16 = new DiskReader16Sector ();
-
-    return reader16;
-  }
-
-  // ---------------------------------------------------------------------------------//
-  private static DiskReader diskReaderGCR ()
-  // ---------------------------------------------------------------------------------//
-  {
-    if (readerGCR == null)
-      readerGCR = new DiskReaderGCR ();
-
-    return readerGCR;
-  }
-
   // ---------------------------------------------------------------------------------//
   byte[] decodeSector (byte[] buffer) throws DiskNibbleException
   // ---------------------------------------------------------------------------------//